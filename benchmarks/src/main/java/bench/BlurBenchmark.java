@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import data.BlurMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BlurBenchmark times PixImg.boxBlur() for 1, 10 and 100 iterations, exactly
+ * and approximately.  The SIMD kernels are used where data.VectorSupport
+ * finds them, which needs the forks started with
+ * "-jvmArgsPrepend --add-modules=jdk.incubator.vector"; "mvn verify -Dperf"
+ * passes that when the vector profile is active.  Without it, or with
+ * "-jvmArgsAppend -Dpix.vector=false", the scalar loops are timed.  Each
+ * result is released, as BlurItBatch does, so the blurs run on pooled
+ * buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlurBenchmark {
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({Images.NOISE, Images.FLAT})
+    public String content;
+
+    @Param({"1", "10", "100"})
+    public int iterations;
+
+    @Param({"EXACT", "APPROXIMATE"})
+    public BlurMode mode;
+
+    private Object image;
+
+    @Setup
+    public void setUp() throws Throwable {
+        image = Images.create(size, content);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        Images.release(image);
+    }
+
+    @Benchmark
+    public Object boxBlur() throws Throwable {
+        Object blurred = Images.boxBlur(image, iterations, mode);
+        Images.release(blurred);
+        return blurred;
+    }
+}
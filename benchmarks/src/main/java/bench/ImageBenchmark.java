@@ -0,0 +1,70 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ImageBenchmark times edge detection and the conversions between PixImg
+ * and RunLengthEncoding.  Like BlurBenchmark, it uses the SIMD kernels when
+ * the forks are started with jdk.incubator.vector, and releases the PixImgs
+ * it makes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmark {
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({Images.NOISE, Images.FLAT})
+    public String content;
+
+    private Object image;
+    private Object rle;
+
+    @Setup
+    public void setUp() throws Throwable {
+        image = Images.create(size, content);
+        rle = Images.encode(image);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        Images.release(image);
+    }
+
+    @Benchmark
+    public Object sobelEdges() throws Throwable {
+        Object edges = Images.sobelEdges(image);
+        Images.release(edges);
+        return edges;
+    }
+
+    @Benchmark
+    public Object encode() throws Throwable {
+        return Images.encode(image);
+    }
+
+    @Benchmark
+    public Object toPixImg() throws Throwable {
+        Object decoded = Images.toPixImg(rle);
+        Images.release(decoded);
+        return decoded;
+    }
+}
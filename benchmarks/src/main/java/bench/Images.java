@@ -0,0 +1,162 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+
+import data.BlurMode;
+
+/**
+ * Images gives the benchmarks access to PixImg, RunLengthEncoding and
+ * TIFFEncoder.  Those classes live in the default package, which no named
+ * package can import, and JMH will not generate benchmarks for classes in the
+ * default package, so the methods under test are bound here as method
+ * handles.  The handles are static final, so the JIT treats them as
+ * constants and inlines through them; the calls cost the same as direct
+ * ones.
+ * <p/>
+ * Images and encodings are passed around as Objects.  The PixImgs made here
+ * borrow their pixels from the buffer pool, so a benchmark should release()
+ * every image it creates, or the pool fills with leaks and each result is
+ * allocated afresh, which is not what a program that releases its images
+ * sees.
+ */
+final class Images {
+
+    static final String NOISE = "noise";
+    // Solid black, like black.tiff, which encodes as a single run.
+    static final String FLAT = "flat";
+
+    private static final Class<?> PIX_IMG = type("PixImg");
+    private static final Class<?> RLE = type("RunLengthEncoding");
+    private static final Class<?> TIFF_ENCODER = type("TIFFEncoder");
+
+    private static final MethodHandle NEW_PIX_IMG =
+            constructor(PIX_IMG, int.class, int.class);
+    private static final MethodHandle SET_PIX_IMG_PIXEL =
+            method(PIX_IMG, "setPixel", void.class, int.class, int.class, int.class, int.class, int.class);
+    private static final MethodHandle RELEASE =
+            method(PIX_IMG, "release", void.class);
+    private static final MethodHandle BOX_BLUR =
+            method(PIX_IMG, "boxBlur", PIX_IMG, int.class, BlurMode.class);
+    private static final MethodHandle SOBEL_EDGES =
+            method(PIX_IMG, "sobelEdges", PIX_IMG);
+    private static final MethodHandle NEW_RLE =
+            constructor(RLE, PIX_IMG);
+    private static final MethodHandle TO_PIX_IMG =
+            method(RLE, "toPixImg", PIX_IMG);
+    private static final MethodHandle SET_RLE_PIXEL =
+            method(RLE, "setPixel", void.class, int.class, int.class, short.class, short.class, short.class);
+    private static final MethodHandle WITH_RLE_PIXEL =
+            method(RLE, "withPixel", RLE, int.class, int.class, short.class, short.class, short.class);
+    private static final MethodHandle WRITE_PIX_IMG =
+            staticMethod(TIFF_ENCODER, "writeTIFF", void.class, PIX_IMG, String.class);
+    private static final MethodHandle WRITE_RLE =
+            staticMethod(TIFF_ENCODER, "writeTIFF", void.class, RLE, String.class);
+
+    private Images() {
+    }
+
+    /**
+     * create() returns a size x size PixImg filled with content: NOISE for
+     * independent random colours, FLAT for solid black.
+     */
+    static Object create(int size, String content) throws Throwable {
+        Object image = NEW_PIX_IMG.invokeExact(size, size);
+        if (content.equals(NOISE)) {
+            Random random = new Random(size);
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    SET_PIX_IMG_PIXEL.invokeExact(image, x, y,
+                            random.nextInt(256), random.nextInt(256), random.nextInt(256));
+                }
+            }
+        } else if (!content.equals(FLAT)) {
+            throw new IllegalArgumentException("Unknown content " + content);
+        }
+        return image;
+    }
+
+    /**
+     * release() gives the pixels of image back to the buffer pool.
+     */
+    static void release(Object image) throws Throwable {
+        RELEASE.invokeExact(image);
+    }
+
+    static Object boxBlur(Object image, int numIterations, BlurMode mode) throws Throwable {
+        return (Object) BOX_BLUR.invokeExact(image, numIterations, (Object) mode);
+    }
+
+    static Object sobelEdges(Object image) throws Throwable {
+        return (Object) SOBEL_EDGES.invokeExact(image);
+    }
+
+    static Object encode(Object image) throws Throwable {
+        return (Object) NEW_RLE.invokeExact(image);
+    }
+
+    static Object toPixImg(Object rle) throws Throwable {
+        return (Object) TO_PIX_IMG.invokeExact(rle);
+    }
+
+    static void setPixel(Object rle, int x, int y, short red, short green, short blue) throws Throwable {
+        SET_RLE_PIXEL.invokeExact(rle, x, y, red, green, blue);
+    }
+
+    static Object withPixel(Object rle, int x, int y, short red, short green, short blue) throws Throwable {
+        return (Object) WITH_RLE_PIXEL.invokeExact(rle, x, y, red, green, blue);
+    }
+
+    static void writeImage(Object image, String filename) throws Throwable {
+        WRITE_PIX_IMG.invokeExact(image, (Object) filename);
+    }
+
+    static void writeEncoding(Object rle, String filename) throws Throwable {
+        WRITE_RLE.invokeExact(rle, (Object) filename);
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // The handles are adapted so that every reference type they take or
+    // return, including String, is Object; invokeExact() can then be called
+    // on them without naming the default-package types.
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup()
+                    .findConstructor(type, MethodType.methodType(void.class, parameters));
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> type, String name, Class<?> result, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup()
+                    .findVirtual(type, name, MethodType.methodType(result, parameters));
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> type, String name, Class<?> result,
+                                             Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup()
+                    .findStatic(type, name, MethodType.methodType(result, parameters));
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
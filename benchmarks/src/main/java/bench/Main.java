@@ -0,0 +1,30 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Main runs the benchmarks with JMH's usual command line, except that the
+ * results are written as JSON to jmh-result.json unless -rf or -rff says
+ * otherwise.  For example,
+ * <p/>
+ * java -jar target/benchmarks.jar Blur -p size=256
+ * <p/>
+ * runs only BlurBenchmark on 256x256 images.
+ */
+public class Main {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add(0, "-rf");
+            options.add(1, "json");
+        }
+        if (!options.contains("-rff")) {
+            options.add(0, "-rff");
+            options.add(1, "jmh-result.json");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,90 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RunEditBenchmark times RunLengthEncoding.setPixel() at pseudo-random
+ * pixels, and withPixel(), which makes each edit a new version sharing the
+ * untouched pages with the last.  Edits fragment the runs over time, so the
+ * encoding is rebuilt before each measurement iteration to keep the
+ * iterations comparable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunEditBenchmark {
+
+    private static final int EDITS = 1 << 16;
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({Images.NOISE, Images.FLAT})
+    public String content;
+
+    private Object image;
+    private Object rle;
+
+    // Precomputed edits, used in turn: x, y and a gray level for each.
+    private final int[] xs = new int[EDITS];
+    private final int[] ys = new int[EDITS];
+    private final short[] grays = new short[EDITS];
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable {
+        image = Images.create(size, content);
+        Random random = new Random(42);
+        for (int i = 0; i < EDITS; i++) {
+            xs[i] = random.nextInt(size);
+            ys[i] = random.nextInt(size);
+            grays[i] = (short) random.nextInt(256);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        Images.release(image);
+    }
+
+    @Setup(Level.Iteration)
+    public void encode() throws Throwable {
+        rle = Images.encode(image);
+        next = 0;
+    }
+
+    @Benchmark
+    public void setPixel() throws Throwable {
+        int i = next;
+        next = (i + 1) & (EDITS - 1);
+        short gray = grays[i];
+        Images.setPixel(rle, xs[i], ys[i], gray, gray, gray);
+    }
+
+    @Benchmark
+    public Object withPixel() throws Throwable {
+        int i = next;
+        next = (i + 1) & (EDITS - 1);
+        short gray = grays[i];
+        rle = Images.withPixel(rle, xs[i], ys[i], gray, gray, gray);
+        return rle;
+    }
+}
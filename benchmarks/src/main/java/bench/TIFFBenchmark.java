@@ -0,0 +1,68 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TIFFBenchmark times both TIFFEncoder.writeTIFF() overloads: an
+ * uncompressed file from a PixImg and a PackBits file from a
+ * RunLengthEncoding.  Each benchmark overwrites one temporary file, so the
+ * times include the file system's write path but not creating new files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TIFFBenchmark {
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({Images.NOISE, Images.FLAT})
+    public String content;
+
+    private Object image;
+    private Object rle;
+    private File file;
+
+    @Setup
+    public void setUp() throws Throwable {
+        image = Images.create(size, content);
+        rle = Images.encode(image);
+        file = File.createTempFile("bench", ".tiff");
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        Images.release(image);
+        if (!file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    @Benchmark
+    public void writeImage() throws Throwable {
+        Images.writeImage(image, file.getPath());
+    }
+
+    @Benchmark
+    public void writeEncoding() throws Throwable {
+        Images.writeEncoding(rle, file.getPath());
+    }
+}
@@ -1,10 +1,10 @@
-/* BlurItItIt.java */
+/* BlurIt.java */
 
-/* DO NOT CHANGE THIS FILE. */
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
-/* You may want to insert println() statements     */
-/* while testing your code.  When you're finished testing and debugging,     */
-/* please remove any statement you have added. */
+import io.TIFFReader;
 
 /**
  *  The BlurIt class is a program that reads an image file in TIFF format, BlurIts
@@ -23,8 +23,10 @@
  *  then BlurIt will read engine.tiff, perform 5 iterations of Blurring, and
  *  write the Blurred image to BlurIt_engine.tiff .
  *
+ *  If the first parameter is -batch, the rest are handed to BlurItBatch,
+ *  which processes many files in one run.
+ *
  */
-
 public class BlurIt {
   
   /**
@@ -35,22 +37,57 @@ public class BlurIt {
    *  @param numIterations the number of iterations of BlurItring to perform.
    */
   private static void BlurItFile(String filename, int numIterations) {
-    System.out.println("Reading image file " + filename);
-    PixImg image = ImgUtils.readTIFFPix(filename);
+    String BlurItname = "blurred_" + filename;
+    if (!streamFile(filename, BlurItname)) {
+      System.out.println("Reading image file " + filename);
+      PixImg image = ImgUtils.readTIFFPix(filename);
 
-    System.out.println("BlurItring image file.");
-    PixImg Blurred = image.sobelEdges();
+      System.out.println("BlurItring image file.");
+      PixImg Blurred = image.sobelEdges();
 
-    String BlurItname = "blurred_" + filename;
-    System.out.println("Writing Blurred image file " + BlurItname);
-    TIFFEncoder.writeTIFF(Blurred, BlurItname);
+      System.out.println("Writing Blurred image file " + BlurItname);
+      TIFFEncoder.writeTIFF(Blurred, BlurItname);
+    }
     /*
     TIFFEncoder.writeTIFF(new RunLengthEncoding(edges), "rle" + BlurItname);
     */
 
     System.out.println("Displaying input image and Blurred image.");
     System.out.println("Close the image to quit.");
-    ImgUtils.displayTIFFs(new PixImg[] { image, Blurred });
+    ImgUtils.displayTIFFs(new PixImg[] { ImgUtils.readTIFFPix(filename),
+                                         ImgUtils.readTIFFPix(BlurItname) });
+  }
+
+  /**
+   *  streamFile() reads a TIFF image file, BlurIts it and writes the Blurred
+   *  image a strip at a time.  Rows flow from the reader through the filter
+   *  to the writer as they are needed, so neither image is held in memory
+   *  whole and the first strips are written before the input is fully read.
+   *
+   *  @param filename the name of the input TIFF image file.
+   *  @param BlurItname the name of the output TIFF image file.
+   *  @return false if the input is not a TIFF layout io.TIFFReader handles,
+   *          in which case nothing is written.
+   */
+  private static boolean streamFile(String filename, String BlurItname) {
+    TIFFReader reader;
+    try {
+      reader = TIFFReader.open(Paths.get(filename));
+    } catch (IOException e) {
+      return false;
+    }
+    try {
+      System.out.println("Streaming image file " + filename + " to Blurred image file " +
+                         BlurItname);
+      TIFFEncoder.writeTIFF(PixImg.sobelEdges(reader), BlurItname);
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return true;
   }
 
   /**
@@ -61,13 +98,21 @@ public class BlurIt {
    *
    *  @param args the usual array of command-line argument Strings.
    */
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length > 0 && args[0].equals("-batch")) {
+      BlurItBatch.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
     if (args.length == 0) {
       System.out.println("usage:  java BlurIt imagefile [iterations]");
       System.out.println("  imagefile is an image in TIFF format.");
       System.out.println("  interations is the number of BlurItring iterations" +
                          " (default 1).");
       System.out.println("The Blurred image is written to BlurIt_imagefile.");
+      System.out.println("To process many files in one run, use");
+      System.out.println("  java BlurIt -batch [-jobs n] [-reads n] [-out dir] [-overlap]" +
+                         " [-approximate] [-metrics file]" +
+                         " (blur [iterations] | sobel | rle) input...");
       System.exit(0);
     }
 
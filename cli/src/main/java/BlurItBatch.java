@@ -0,0 +1,430 @@
+/* BlurItBatch.java */
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import data.BlurMode;
+import data.BufferPool;
+import io.TIFFWriter;
+import metrics.Metrics;
+
+/**
+ * The BlurItBatch class applies one operation to many TIFF files in a single
+ * JVM, so startup and JIT warm-up are paid once rather than once per image.
+ * <p/>
+ * usage:  java BlurIt -batch [options] operation input...
+ * <p/>
+ * The operation is one of
+ * <p/>
+ * blur [iterations]   box blur, 1 iteration unless a count is given;
+ * sobel               Sobel edge detection;
+ * rle                 run-length encode into a PackBits TIFF.
+ * <p/>
+ * Each input is a TIFF file, a directory (every .tif or .tiff file in it), or
+ * a glob such as "scans/*.tiff" (quoted, so that the shell leaves it alone).
+ * The options are
+ * <p/>
+ * -jobs n    run n files at once (default: one per processor);
+ * -reads n   hold at most n images in memory at once (default: the jobs);
+ * -out dir   write the results to dir (default: beside each input);
+ * -overlap   read and write on threads of their own, so that disk and
+ *            network latency overlap the computing; -jobs then counts the
+ *            computing threads, and -reads defaults to twice that;
+ * -approximate
+ *            blur with a data.BoxCascade, which costs about the same for
+ *            any number of iterations, rather than exactly;
+ * -metrics f write the time, throughput, bytes and allocation of each stage,
+ *            summed over the batch, to f (Prometheus text if f ends in
+ *            ".prom", JSON otherwise).
+ * <p/>
+ * A result is named after its input with the operation's prefix ("blurred_",
+ * "edges_" or "rle_") in front.  One line of timings is printed for each
+ * file as it finishes, then a summary, with how often the images' pixels
+ * were reused from the data.BufferPool: each image is released as soon as
+ * its result is written, so once the batch is warm, images of sizes seen
+ * before are read and computed into recycled buffers.
+ * <p/>
+ * Files are queued to a fixed pool of workers.  Before a file is queued the
+ * scheduler takes a read permit, which is returned only when the file's
+ * result has been written; so at most -reads images are in memory, and the
+ * scheduler stops listing work while the pool is busy rather than letting
+ * the queue grow.
+ * <p/>
+ * With -overlap, each file is read and written on a virtual thread (where
+ * the JVM has them), and only the operation itself runs on the fixed pool,
+ * which is sized to the processors.  A slow volume then keeps many reads in
+ * flight without taking processors away from the computing.  The files are
+ * then read into the heap rather than memory-mapped: a virtual thread
+ * stalled in a page fault pins its carrier, which would cap the reads in
+ * flight at the number of carriers, whereas one blocked in
+ * FileChannel.read() does not.
+ */
+public class BlurItBatch {
+
+    private enum Operation {
+        BLUR("blurred_"), SOBEL("edges_"), RLE("rle_");
+
+        private final String prefix;
+
+        Operation(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    private final Operation operation;
+    private final int iterations;
+    private final BlurMode blurMode;
+    private final int jobs;
+    private final int reads;
+    private final Path outDir;
+    private final boolean overlap;
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private BlurItBatch(Operation operation, int iterations, BlurMode blurMode, int jobs, int reads,
+                        Path outDir, boolean overlap) {
+        this.operation = operation;
+        this.iterations = iterations;
+        this.blurMode = blurMode;
+        this.jobs = jobs;
+        this.reads = reads;
+        this.outDir = outDir;
+        this.overlap = overlap;
+    }
+
+    /**
+     * run() processes every file and returns the number that failed.
+     */
+    private int run(List<Path> files) throws InterruptedException {
+        final ExecutorService workers = Executors.newFixedThreadPool(jobs);
+        // In overlap mode the workers only compute; each file's reading and
+        // writing run on a thread of their own.
+        ExecutorService io = overlap ? newIOExecutor() : workers;
+        final Semaphore permits = new Semaphore(reads);
+        long start = System.nanoTime();
+        try {
+            for (final Path file : files) {
+                permits.acquire();
+                io.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            process(file, overlap ? workers : null);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                });
+            }
+        } finally {
+            io.shutdown();
+            io.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            workers.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Processed %d files (%d failed) in %.1f s, %.1f files/s%n",
+                files.size(), failures.get(), seconds, files.size() / seconds);
+        System.out.println(BufferPool.getDefault());
+        return failures.get();
+    }
+
+    /**
+     * newIOExecutor() returns an executor that starts a virtual thread for
+     * each task, so that a blocked read or write costs no platform thread.
+     * Virtual threads arrived in Java 21, and this class still runs on Java
+     * 8, so they are looked up by reflection; without them, each task gets a
+     * platform thread from a cached pool instead.  The read permits bound
+     * the number of tasks either way.
+     */
+    private static ExecutorService newIOExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            System.out.println("Reading and writing on virtual threads.");
+            return executor;
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // An older JVM, or one with virtual threads still in preview.
+            System.out.println("Reading and writing on platform threads; " +
+                    "virtual threads need Java 21.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * process() reads one file, applies the operation and writes the result,
+     * printing how long each step took.  If compute is not null the
+     * operation runs there while the calling thread waits, so the calling
+     * thread does only I/O.  A file that fails is reported and counted, and
+     * does not stop the batch.
+     */
+    private void process(Path file, ExecutorService compute) {
+        final Job job = new Job(file);
+        try {
+            job.read();
+            if (compute == null) {
+                job.compute();
+            } else {
+                compute.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        job.compute();
+                    }
+                }).get();
+            }
+            job.write();
+            job.report();
+        } catch (ExecutionException e) {
+            failures.incrementAndGet();
+            System.err.println(file + " failed: " + e.getCause());
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            System.err.println(file + " failed: " + e);
+        } catch (InterruptedException e) {
+            failures.incrementAndGet();
+            Thread.currentThread().interrupt();
+        } finally {
+            job.release();
+        }
+    }
+
+    /**
+     * A Job carries one file through reading, computing and writing, and
+     * times each step.
+     */
+    private class Job {
+
+        private final Path file;
+        private final Path out;
+
+        private PixImg image;
+        private PixImg result;
+        private RunLengthEncoding rle;
+
+        private long readNanos;
+        private long computeNanos;
+        private long writeNanos;
+
+        Job(Path file) {
+            this.file = file;
+            out = (outDir != null ? outDir : file.toAbsolutePath().getParent())
+                    .resolve(operation.prefix + file.getFileName());
+        }
+
+        void read() {
+            long start = System.nanoTime();
+            image = ImgUtils.readTIFFPix(file.toString(), !overlap);
+            readNanos = System.nanoTime() - start;
+        }
+
+        void compute() {
+            long start = System.nanoTime();
+            if (operation == Operation.RLE) {
+                rle = new RunLengthEncoding(image);
+            } else {
+                result = operation == Operation.BLUR ? image.boxBlur(iterations, blurMode) : image.sobelEdges();
+            }
+            computeNanos = System.nanoTime() - start;
+        }
+
+        void write() throws IOException {
+            // TIFFWriter is used directly, rather than through TIFFEncoder,
+            // so that failures are counted; the samples match TIFFEncoder's.
+            long start = System.nanoTime();
+            TIFFWriter writer = new TIFFWriter();
+            if (operation == Operation.RLE) {
+                Metrics.Sample sample = Metrics.start("writeTIFFRLE");
+                writer.writePackBits(rle.getRuns(), rle.getWidth(), rle.getHeight(), out);
+                sample.stop((long) rle.getWidth() * rle.getHeight(), 0, Files.size(out));
+            } else {
+                Metrics.Sample sample = Metrics.start("writeTIFF");
+                writer.write(result.getStorage(), out);
+                sample.stop((long) result.getWidth() * result.getHeight(), 0, Files.size(out));
+            }
+            writeNanos = System.nanoTime() - start;
+        }
+
+        /**
+         * release() gives the images' pixels back to the buffer pool.  A
+         * result that is the input itself (a blur of no iterations) is
+         * released once.
+         */
+        void release() {
+            if (image != null) {
+                image.release();
+            }
+            if (result != null) {
+                result.release();
+            }
+        }
+
+        void report() {
+            long pixels = (long) image.getWidth() * image.getHeight();
+            long total = readNanos + computeNanos + writeNanos;
+            System.out.printf("%s %dx%d  read %.1f ms, compute %.1f ms, write %.1f ms, %.1f Mpixel/s%n",
+                    file, image.getWidth(), image.getHeight(),
+                    readNanos / 1e6, computeNanos / 1e6, writeNanos / 1e6, pixels * 1e3 / total);
+        }
+    }
+
+    /**
+     * expand() lists the TIFF files named by one input argument: the file
+     * itself, the .tif and .tiff files in a directory, or the files in a
+     * directory matching a glob in the last part of the path.
+     */
+    private static List<Path> expand(String arg) throws IOException {
+        List<Path> files = new ArrayList<>();
+        String name = arg.substring(arg.lastIndexOf('/') + 1);
+        if (name.matches(".*[*?\\[{].*")) {
+            Path dir = Paths.get(arg.substring(0, arg.length() - name.length()) + ".");
+            list(dir, name, files);
+        } else if (Files.isDirectory(Paths.get(arg))) {
+            list(Paths.get(arg), "*.{tif,tiff,TIF,TIFF}", files);
+        } else {
+            files.add(Paths.get(arg));
+        }
+        return files;
+    }
+
+    private static void list(Path dir, String glob, List<Path> files) throws IOException {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, glob)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    found.add(dir.resolve(entry.getFileName()).normalize());
+                }
+            }
+        }
+        Collections.sort(found);
+        files.addAll(found);
+    }
+
+    private static void usage(String problem) {
+        if (problem != null) {
+            System.err.println(problem);
+        }
+        System.err.println("usage:  java BlurIt -batch [-jobs n] [-reads n] [-out dir] [-overlap] [-approximate] " +
+                "[-metrics file] " +
+                "(blur [iterations] | sobel | rle) input...");
+        System.err.println("  each input is a TIFF file, a directory of them, or a quoted glob.");
+        System.exit(1);
+    }
+
+    private static int parseCount(String option, String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        usage(option + " needs a positive number, not " + value);
+        return 0;
+    }
+
+    /**
+     * main() reads the command-line arguments (those after -batch) and runs
+     * the batch.  It exits with status 1 if any file failed.
+     *
+     * @param args the usual array of command-line argument Strings.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int reads = 0;
+        Path outDir = null;
+        boolean overlap = false;
+        BlurMode blurMode = BlurMode.EXACT;
+        String metricsFile = null;
+
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            String option = args[i++];
+            if (option.equals("-overlap")) {
+                overlap = true;
+                continue;
+            }
+            if (option.equals("-approximate")) {
+                blurMode = BlurMode.APPROXIMATE;
+                continue;
+            }
+            if (i == args.length) {
+                usage(option + " needs a value");
+            }
+            String value = args[i++];
+            switch (option) {
+                case "-jobs":
+                    jobs = parseCount(option, value);
+                    break;
+                case "-reads":
+                    reads = parseCount(option, value);
+                    break;
+                case "-metrics":
+                    metricsFile = value;
+                    break;
+                case "-out":
+                    outDir = Paths.get(value);
+                    Files.createDirectories(outDir);
+                    break;
+                default:
+                    usage("Unknown option " + option);
+            }
+        }
+        if (i == args.length) {
+            usage(null);
+        }
+
+        Operation operation = null;
+        int iterations = 1;
+        switch (args[i++]) {
+            case "blur":
+                operation = Operation.BLUR;
+                if (i < args.length && args[i].matches("\\d+")) {
+                    iterations = Integer.parseInt(args[i++]);
+                }
+                break;
+            case "sobel":
+                operation = Operation.SOBEL;
+                break;
+            case "rle":
+                operation = Operation.RLE;
+                break;
+            default:
+                usage("Unknown operation " + args[i - 1]);
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (; i < args.length; i++) {
+            files.addAll(expand(args[i]));
+        }
+        if (files.isEmpty()) {
+            usage("No input files");
+        }
+
+        if (reads == 0) {
+            // Overlapping I/O needs images waiting on both sides of compute.
+            reads = overlap ? 2 * jobs : jobs;
+        }
+        BlurItBatch batch = new BlurItBatch(operation, iterations, blurMode, jobs, reads, outDir, overlap);
+        int failed = batch.run(files);
+        if (metricsFile != null) {
+            Metrics.dump(metricsFile);
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,855 @@
+/* PixImage.java */
+
+import data.BlurMode;
+import data.BorderMode;
+import data.BoxBlur;
+import data.BoxCascade;
+import data.BufferPool;
+import data.Convolution;
+import data.Kernel;
+import data.Pixel;
+import data.PixelLayout;
+import data.PixelMatrix;
+import data.PixelStorage;
+import data.RowSource;
+import data.SobelFilter;
+import data.SummedAreaTable;
+import data.VectorSupport;
+import metrics.Metrics;
+
+import java.util.Random;
+import java.util.function.LongToIntFunction;
+
+/**
+ * The PixImg class represents an image, which is a rectangular grid of
+ * color pixels.  Each pixel has red, green, and blue intensities in the range
+ * 0...255.  Descriptions of the methods you must implement appear below.
+ * They include a constructor of the form
+ * <p/>
+ * public PixImg(int width, int height);
+ * <p/>
+ * that creates a black (zero intensity) image of the specified width and
+ * height.  Pixels are numbered in the range (0...width - 1, 0...height - 1).
+ * <p/>
+ * All methods in this class must be implemented to complete Part I.
+ * See the README file accompanying this project for additional details.
+ * <p/>
+ * The pixels of a PixImg in the PACKED_INT layout are borrowed from
+ * data.BufferPool.getDefault().  release() (or closing the PixImg, as in a
+ * try-with-resources statement) gives them back to be reused by the next
+ * image of about the same size, so a long batch can run without allocating
+ * a new image for every result.  A released PixImg cannot be used again.
+ * A PixImg that is never released is collected as usual, and its pixels are
+ * counted as a leak.
+ */
+
+public class PixImg implements AutoCloseable {
+
+    /**
+     * Define any variables associated with a PixImg object here.  These
+     * variables MUST be private.
+     */
+    private int width;
+    private int height;
+
+    private PixelMatrix matrix;
+
+    /*
+        Sobel edge detection maps energies to intensities with mag2gray(),
+        tabulated once when the class is loaded.
+     */
+    private static final SobelFilter SOBEL = new SobelFilter(new LongToIntFunction() {
+        @Override
+        public int applyAsInt(long mag) {
+            return mag2gray(mag);
+        }
+    });
+
+    /**
+     * PixImg() constructs an empty PixImg with a specified width and height.
+     * Every pixel has red, green, and blue intensities of zero (solid black).
+     *
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     */
+    public PixImg(int width, int height) {
+        this(width, height, PixelLayout.PACKED_INT);
+    }
+
+    /**
+     * PixImg() constructs an empty PixImg whose pixels are stored in the
+     * specified layout.  PACKED_INT is the fastest; the byte layouts trade a
+     * little speed for a quarter less memory.  MAPPED_INT keeps the pixels in
+     * a memory-mapped file, for images larger than the heap; the results of
+     * blurring and edge detection are mapped too.
+     *
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @param layout how the pixels are laid out in memory.
+     */
+    public PixImg(int width, int height, PixelLayout layout) {
+        this(new PixelMatrix(BufferPool.getDefault().create(layout, width, height)));
+    }
+
+    private PixImg(PixelMatrix matrix) {
+        this.width = matrix.getWidth();
+        this.height = matrix.getHeight();
+
+        this.matrix = matrix;
+    }
+
+    /**
+     * blankCopy() returns a black PixImg with the same size and pixel layout
+     * as "this" PixImg.
+     */
+    private PixImg blankCopy() {
+        return new PixImg(new PixelMatrix(BufferPool.getDefault().createBlank(getStorage(), width, height)));
+    }
+
+    /**
+     * getStorage() returns the pixels of this PixImg, for classes such as
+     * RunLengthEncoding that move whole rows or runs at a time.
+     */
+    PixelStorage getStorage() {
+        return matrix().getStorage();
+    }
+
+    /**
+     * matrix() returns the pixels of this PixImg, which must not have been
+     * released.
+     */
+    private PixelMatrix matrix() {
+        if (matrix == null) {
+            throw new IllegalStateException("This PixImg has been released");
+        }
+        return matrix;
+    }
+
+    /**
+     * release() gives the pixels of this PixImg back to the buffer pool, and
+     * leaves this PixImg unusable.  Releasing it again does nothing.  Note
+     * that boxBlur() with no iterations returns "this" PixImg itself, so the
+     * same image may be released twice.
+     */
+    public void release() {
+        if (matrix != null) {
+            BufferPool.getDefault().release(getStorage());
+            matrix = null;
+        }
+    }
+
+    /**
+     * close() is release(), so that a PixImg can be used in a
+     * try-with-resources statement.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+
+    /**
+     * getWidth() returns the width of the image.
+     *
+     * @return the width of the image.
+     */
+    public int getWidth() {
+        // Replace the following line with your solution.
+        return width;
+    }
+
+    /**
+     * getHeight() returns the height of the image.
+     *
+     * @return the height of the image.
+     */
+    public int getHeight() {
+        // Replace the following line with your solution.
+        return height;
+    }
+
+    /**
+     * getRed() returns the red intensity of the pixel at coordinate (x, y).
+     *
+     * @param x the x-coordinate of the pixel.
+     * @param y the y-coordinate of the pixel.
+     * @return the red intensity of the pixel at coordinate (x, y).
+     */
+    public short getRed(int x, int y) {
+        // Replace the following line with your solution.
+        return matrix().getRed(x, y);
+    }
+
+    /**
+     * getGreen() returns the green intensity of the pixel at coordinate (x, y).
+     *
+     * @param x the x-coordinate of the pixel.
+     * @param y the y-coordinate of the pixel.
+     * @return the green intensity of the pixel at coordinate (x, y).
+     */
+    public short getGreen(int x, int y) {
+        // Replace the following line with your solution.
+        return matrix().getGreen(x, y);
+    }
+
+    /**
+     * getBlue() returns the blue intensity of the pixel at coordinate (x, y).
+     *
+     * @param x the x-coordinate of the pixel.
+     * @param y the y-coordinate of the pixel.
+     * @return the blue intensity of the pixel at coordinate (x, y).
+     */
+    public short getBlue(int x, int y) {
+        // Replace the following line with your solution.
+        return matrix().getBlue(x, y);
+    }
+
+    /**
+     * setPixel() sets the pixel at coordinate (x, y) to specified red, green,
+     * and blue intensities.
+     * <p/>
+     * If any of the three color intensities is NOT in the range 0...255, then
+     * this method does NOT change any of the pixel intensities.
+     *
+     * @param x     the x-coordinate of the pixel.
+     * @param y     the y-coordinate of the pixel.
+     * @param red   the new red intensity for the pixel at coordinate (x, y).
+     * @param green the new green intensity for the pixel at coordinate (x, y).
+     * @param blue  the new blue intensity for the pixel at coordinate (x, y).
+     */
+    public void setPixel(int x, int y, short red, short green, short blue) {
+        if (isIntensity(red) && isIntensity(green) && isIntensity(blue)) {
+            matrix().setPixel(x, y, red, green, blue);
+        }
+    }
+
+    private static boolean isIntensity(short value) {
+        return value >= 0 && value <= 255;
+    }
+
+    public void setPixel(int x, int y, int red, int green, int blue) {
+        setPixel(x, y, (short) red, (short) green, (short) blue);
+    }
+
+    /**
+     * toString() returns a String representation of this PixImg.
+     * <p/>
+     * This method isn't required, but it should be very useful to you when
+     * you're debugging your code.  It's up to you how you represent a PixImg
+     * as a String.
+     *
+     * @return a String representation of this PixImg.
+     */
+    public String toString() {
+        String s = "";
+        // Replace the following line with your solution.
+        for (int y = 0; y < getWidth(); y++) {
+            s += "\n";
+            for (int x = 0; x < getHeight(); x++) {
+                s += matrix().getRed(x, y) + ",";
+            }
+        }
+
+        return s;
+    }
+
+    /**
+     * boxBlur() returns a blurred version of "this" PixImg.
+     * <p/>
+     * If numIterations == 1, each pixel in the output PixImg is assigned
+     * a value equal to the average of its neighboring pixels in "this" PixImg,
+     * INCLUDING the pixel itself.
+     * <p/>
+     * A pixel not on the image boundary has nine neighbors--the pixel itself and
+     * the eight pixels surrounding it.  A pixel on the boundary has six
+     * neighbors if it is not a corner pixel; only four neighbors if it is
+     * a corner pixel.  The average of the neighbors is the sum of all the
+     * neighbor pixel values (including the pixel itself) divided by the number
+     * of neighbors, with non-integer quotients rounded toward zero (as Java does
+     * naturally when you divide two integers).
+     * <p/>
+     * Each color (red, green, blue) is blurred separately.  The red input should
+     * have NO effect on the green or blue outputs, etc.
+     * <p/>
+     * The parameter numIterations specifies a number of repeated iterations of
+     * box blurring to perform.  If numIterations is zero or negative, "this"
+     * PixImg is returned (not a copy).  If numIterations is positive, the
+     * return value is a newly constructed PixImg.
+     * <p/>
+     * IMPORTANT:  DO NOT CHANGE "this" PixImg!!!  All blurring/changes should
+     * appear in the new, output PixImg only.
+     *
+     * @param numIterations the number of iterations of box blurring.
+     * @return a blurred version of "this" PixImg.
+     */
+    public PixImg boxBlur(int numIterations) {
+        if (numIterations <= 0) {
+            return this;
+        }
+
+        Metrics.Sample sample = Metrics.start("boxBlur");
+        PixImg blurredImage = blankCopy();
+        new BoxBlur(width, height).blur(getStorage(), blurredImage.getStorage(), numIterations);
+        sample.stop((long) width * height, 0, 0);
+
+        return blurredImage;
+    }
+
+    /**
+     * boxBlur() returns a blurred version of "this" PixImg, computed as mode
+     * says.  EXACT is boxBlur(numIterations).  APPROXIMATE takes about the
+     * same time for any numIterations, and each channel of its result is
+     * within data.BoxCascade.MAX_ERROR (and usually within a level or two) of
+     * the blur computed without rounding; see data.BoxCascade.
+     *
+     * @param numIterations the number of iterations of box blurring.
+     * @param mode          whether to blur exactly or approximately.
+     * @return a blurred version of "this" PixImg.
+     */
+    public PixImg boxBlur(int numIterations, BlurMode mode) {
+        if (mode == BlurMode.EXACT || numIterations <= 0) {
+            return boxBlur(numIterations);
+        }
+
+        Metrics.Sample sample = Metrics.start("boxCascade");
+        PixImg blurredImage = blankCopy();
+        new BoxCascade(width, height, numIterations).blur(getStorage(), blurredImage.getStorage());
+        sample.stop((long) width * height, 0, 0);
+
+        return blurredImage;
+    }
+
+    /**
+     * boxBlur() returns the rows of image blurred numIterations times, as
+     * boxBlur(int) would, computed a row at a time as they are read.  The
+     * rows must be read in order; see data.RowStage.
+     *
+     * @param image         the rows to blur, read once each, in order.
+     * @param numIterations the number of iterations of box blurring.
+     * @return the blurred rows.
+     */
+    public static RowSource boxBlur(RowSource image, int numIterations) {
+        return BoxBlur.stream(image, 1, numIterations);
+    }
+
+    /**
+     * boxFilter() returns a new PixImg in which each pixel is the average of
+     * the (2 * radius + 1)-square window around it in "this" PixImg, counting
+     * only the pixels inside the image and rounding toward zero, as
+     * boxBlur(1) does for radius 1.  It takes the same time for any radius;
+     * see data.SummedAreaTable.
+     *
+     * @param radius the radius of the window.
+     * @return the filtered image.
+     */
+    public PixImg boxFilter(int radius) {
+        Metrics.Sample sample = Metrics.start("boxFilter");
+        PixImg filteredImage = blankCopy();
+        new SummedAreaTable(getStorage()).boxBlur(radius, filteredImage.getStorage());
+        sample.stop((long) width * height, 0, 0);
+
+        return filteredImage;
+    }
+
+    /**
+     * adaptiveThreshold() returns a black and white version of "this" PixImg:
+     * a pixel is white if the mean of its red, green and blue intensities is
+     * at least the mean intensity of the (2 * radius + 1)-square window
+     * around it, less offset, and black otherwise.
+     *
+     * @param radius the radius of the window.
+     * @param offset how far below the local mean a pixel may be and still be
+     *               white.
+     * @return the thresholded image.
+     */
+    public PixImg adaptiveThreshold(int radius, int offset) {
+        Metrics.Sample sample = Metrics.start("adaptiveThreshold");
+        PixImg thresholdedImage = blankCopy();
+        new SummedAreaTable(getStorage()).threshold(radius, offset, thresholdedImage.getStorage());
+        sample.stop((long) width * height, 0, 0);
+
+        return thresholdedImage;
+    }
+
+    /**
+     * normalizeContrast() returns a new PixImg in which each intensity is
+     * measured against the mean and standard deviation of the
+     * (2 * radius + 1)-square window around it in "this" PixImg: the local
+     * mean becomes 128, and two deviations either side span 0...255.
+     *
+     * @param radius the radius of the window.
+     * @return the normalized image.
+     */
+    public PixImg normalizeContrast(int radius) {
+        Metrics.Sample sample = Metrics.start("normalizeContrast");
+        PixImg normalizedImage = blankCopy();
+        new SummedAreaTable(getStorage(), true).normalizeContrast(radius,
+                normalizedImage.getStorage());
+        sample.stop((long) width * height, 0, 0);
+
+        return normalizedImage;
+    }
+
+    /**
+     * convolve() returns a new PixImg in which each pixel is the weighted sum,
+     * under the given kernel, of its neighbourhood in "this" PixImg.  Each
+     * color is filtered separately and the results are clamped to 0...255.
+     * Separable kernels (Gaussians, for example) are run as two 1-D passes.
+     * <p/>
+     * "this" PixImg is not changed.
+     *
+     * @param kernel the weights to apply.
+     * @param border what the kernel sees beyond the edges of the image.
+     * @return the filtered image.
+     */
+    public PixImg convolve(Kernel kernel, BorderMode border) {
+        PixImg out = blankCopy();
+        new Convolution(kernel, border).filter(getStorage(), out.getStorage());
+        return out;
+    }
+
+
+    /**
+     * sobelEdges() applies the Sobel operator, identifying edges in "this"
+     * image.  The Sobel operator computes a magnitude that represents how
+     * strong the edge is.  We compute separate gradients for the red, blue, and
+     * green components at each pixel, then sum the squares of the three
+     * gradients at each pixel.  We convert the squared magnitude at each pixel
+     * into a grayscale pixel intensity in the range 0...255 with the logarithmic
+     * mapping encoded in mag2gray().  The output is a grayscale PixImg whose
+     * pixel intensities reflect the strength of the edges.
+     * <p/>
+     * See http://en.wikipedia.org/wiki/Sobel_operator#Formulation for details.
+     *
+     * @return a grayscale PixImg representing the edges of the input image.
+     *         Whiter pixels represent stronger edges.
+     */
+    public PixImg sobelEdges() {
+        Metrics.Sample sample = Metrics.start("sobelEdges");
+        PixImg out = blankCopy();
+        SOBEL.filter(getStorage(), out.getStorage());
+        sample.stop((long) width * height, 0, 0);
+        return out;
+    }
+
+    /**
+     * sobelEdges() returns the Sobel edges of image, as sobelEdges() would,
+     * computed a row at a time as they are read.  The rows must be read in
+     * order; see data.RowStage.
+     *
+     * @param image the rows to filter, read in order.
+     * @return the grayscale edge rows.
+     */
+    public static RowSource sobelEdges(RowSource image) {
+        return SOBEL.stream(image);
+    }
+
+    /**
+     * mag2gray() maps an energy (squared vector magnitude) in the range
+     * 0...24,969,600 to a grayscale intensity in the range 0...255.  The map
+     * is logarithmic, but shifted so that values of 5,080 and below map to zero.
+     * <p/>
+     * DO NOT CHANGE THIS METHOD.  If you do, you will not be able to get the
+     * correct images and pass the autograder.
+     *
+     * @param mag the energy (squared vector magnitude) of the pixel whose
+     *            intensity we want to compute.
+     * @return the intensity of the output pixel.
+     */
+    private static short mag2gray(long mag) {
+        short intensity = (short) (30.0 * Math.log(1.0 + (double) mag) - 256.0);
+
+        // Make sure the returned intensity is in the range 0...255, regardless of
+        // the input value.
+        if (intensity < 0) {
+            intensity = 0;
+        } else if (intensity > 255) {
+            intensity = 255;
+        }
+        return intensity;
+    }
+
+
+    /**
+     * TEST CODE:  YOU DO NOT NEED TO FILL IN ANY METHODS BELOW THIS POINT.
+     * You are welcome to add tests, though.  Methods below this point will not
+     * be tested.  This is not the autograder, which will be provided separately.
+     */
+
+
+    // The number of failed tests, so that main() can exit with an error
+    // status for the build.
+    private static int failures;
+
+    /**
+     * doTest() checks whether the condition is true and prints the given error
+     * message, and counts the failure, if it is not.
+     *
+     * @param b   the condition to check.
+     * @param msg the error message to print if the condition is false.
+     */
+    private static void doTest(boolean b, String msg) {
+        if (b) {
+            System.out.println("Good.");
+        } else {
+            failures++;
+            System.err.println(msg);
+        }
+    }
+
+    /**
+     * array2PixImg() converts a 2D array of grayscale intensities to
+     * a grayscale PixImg.
+     *
+     * @param pixels a 2D array of grayscale intensities in the range 0...255.
+     * @return a new PixImg whose red, green, and blue values are equal to
+     *         the input grayscale intensities.
+     */
+    private static PixImg array2PixImg(int[][] pixels) {
+        int width = pixels.length;
+        int height = pixels[0].length;
+        PixImg image = new PixImg(width, height);
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setPixel(x, y, (short) pixels[x][y], (short) pixels[x][y],
+                        (short) pixels[x][y]);
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * equals() checks whether two images are the same, i.e. have the same
+     * dimensions and pixels.
+     *
+     * @param image a PixImg to compare with "this" PixImg.
+     * @return true if the specified PixImg is identical to "this" PixImg.
+     */
+    public boolean equals(PixImg image) {
+        int width = getWidth();
+        int height = getHeight();
+
+        if (image == null ||
+                width != image.getWidth() || height != image.getHeight()) {
+            return false;
+        }
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!(getRed(x, y) == image.getRed(x, y) &&
+                        getGreen(x, y) == image.getGreen(x, y) &&
+                        getBlue(x, y) == image.getBlue(x, y))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * main() runs a series of tests to ensure that the convolutions (box blur
+     * and Sobel) are correct.
+     */
+    public static void main(String[] args) {
+        // Be forwarned that when you write arrays directly in Java as below,
+        // each "row" of text is a column of your image--the numbers get
+        // transposed.
+        PixImg image1 = array2PixImg(new int[][]{{0, 10, 240},
+                {30, 120, 250},
+                {80, 250, 255}});
+
+        System.out.println("Testing getWidth/getHeight on a 3x3 image.  " +
+                "Input image:");
+        System.out.print(image1);
+        doTest(image1.getWidth() == 3 && image1.getHeight() == 3,
+                "Incorrect image width and height.");
+
+        System.out.println("Testing blurring on a 3x3 image.");
+        doTest(image1.boxBlur(1).equals(
+                array2PixImg(new int[][]{{40, 108, 155},
+                        {81, 137, 187},
+                        {120, 164, 218}})),
+                "Incorrect box blur (1 rep):\n" + image1.boxBlur(1));
+
+        doTest(image1.boxBlur(2).equals(
+                array2PixImg(new int[][]{{91, 118, 146},
+                        {108, 134, 161},
+                        {125, 151, 176}})),
+                "Incorrect box blur (2 rep):\n" + image1.boxBlur(2));
+        doTest(image1.boxBlur(2).equals(image1.boxBlur(1).boxBlur(1)),
+                "Incorrect box blur (1 rep + 1 rep):\n" +
+                        image1.boxBlur(2) + image1.boxBlur(1).boxBlur(1));
+
+        System.out.println("Testing edge detection on a 3x3 image.");
+        doTest(image1.sobelEdges().equals(
+                array2PixImg(new int[][]{{104, 189, 180},
+                        {160, 193, 157},
+                        {166, 178, 96}})),
+                "Incorrect Sobel:\n" + image1.sobelEdges());
+
+        PixImg image2 = array2PixImg(new int[][]{{0, 100, 100},
+                {0, 0, 100}});
+        System.out.println("Testing getWidth/getHeight on a 2x3 image.  " +
+                "Input image:");
+        System.out.print(image2);
+        doTest(image2.getWidth() == 2 && image2.getHeight() == 3,
+                "Incorrect image width and height.");
+
+        System.out.println("Testing blurring on a 2x3 image.");
+        doTest(image2.boxBlur(1).equals(
+                array2PixImg(new int[][]{{25, 50, 75},
+                        {25, 50, 75}})),
+                "Incorrect box blur (1 rep):\n" + image2.boxBlur(1));
+
+        System.out.println("Testing edge detection on a 2x3 image.");
+        doTest(image2.sobelEdges().equals(
+                array2PixImg(new int[][]{{122, 143, 74},
+                        {74, 143, 122}})),
+                "Incorrect Sobel:\n" + image2.sobelEdges());
+
+        System.out.println("Testing convolution on a 3x3 image.");
+        Kernel identity = Kernel.ofInts(new int[][]{{0, 0, 0}, {0, 1, 0}, {0, 0, 0}});
+        for (BorderMode border : BorderMode.values()) {
+            doTest(image1.convolve(identity, border).equals(image1),
+                    "Incorrect identity convolution with border " + border);
+        }
+        doTest(image1.convolve(Kernel.ofFixedPoint(new int[][]{{0, 0, 0}, {0, 512, 0}, {0, 0, 0}}, 8),
+                        BorderMode.ZERO).equals(array2PixImg(new int[][]{{0, 20, 255},
+                        {60, 240, 255},
+                        {160, 255, 255}})),
+                "Incorrect fixed-point convolution:\n" +
+                        image1.convolve(Kernel.ofFixedPoint(new int[][]{{0, 0, 0}, {0, 512, 0}, {0, 0, 0}}, 8),
+                                BorderMode.ZERO));
+
+        System.out.println("Testing blurring and edge detection in every pixel layout.");
+        for (PixelLayout layout : PixelLayout.values()) {
+            PixImg image3 = new PixImg(3, 3, layout);
+            for (int x = 0; x < 3; x++) {
+                for (int y = 0; y < 3; y++) {
+                    image3.setPixel(x, y, image1.getRed(x, y), image1.getGreen(x, y), image1.getBlue(x, y));
+                }
+            }
+            doTest(image3.boxBlur(2).equals(image1.boxBlur(2)) &&
+                            image3.sobelEdges().equals(image1.sobelEdges()),
+                    "Incorrect results in layout " + layout);
+        }
+
+        System.out.println("Testing streamed blurring and edge detection.");
+        doTest(rows2PixImg(boxBlur(image1.getStorage(), 2)).equals(image1.boxBlur(2)) &&
+                        rows2PixImg(sobelEdges(image2.getStorage())).equals(image2.sobelEdges()) &&
+                        rows2PixImg(sobelEdges(boxBlur(image1.getStorage(), 1)))
+                                .equals(image1.boxBlur(1).sobelEdges()),
+                "Incorrect streamed results");
+
+        // The vector module runs these checks with -Dpix.vector.required=true,
+        // so that they fail, rather than quietly check the scalar loops, if
+        // the SIMD kernels cannot be loaded.
+        System.out.println("Testing blurring and edge detection of noise against PixelMatrix, with " +
+                VectorSupport.describe() + ".");
+        doTest(!Boolean.getBoolean("pix.vector.required") || VectorSupport.getKernels() != null,
+                "SIMD kernels are required but not in use: " + VectorSupport.describe());
+        // 67 columns leave a partial vector at the end of every row.
+        PixImg noise = new PixImg(67, 19);
+        Random random = new Random(67);
+        for (int x = 0; x < noise.getWidth(); x++) {
+            for (int y = 0; y < noise.getHeight(); y++) {
+                noise.setPixel(x, y, random.nextInt(256), random.nextInt(256), random.nextInt(256));
+            }
+        }
+        doTest(noise.boxBlur(1).equals(referenceBoxBlur(noise, 1)) &&
+                        noise.boxBlur(7).equals(referenceBoxBlur(noise, 7)),
+                "Incorrect box blur of noise:\n" + noise.boxBlur(1));
+        doTest(noise.sobelEdges().equals(referenceSobelEdges(noise)),
+                "Incorrect Sobel edges of noise:\n" + noise.sobelEdges());
+
+        System.out.println("Testing approximate blurring.");
+        PixImg flat = array2PixImg(new int[][]{{100, 100, 100, 100, 100},
+                {100, 100, 100, 100, 100},
+                {100, 100, 100, 100, 100},
+                {100, 100, 100, 100, 100}});
+        doTest(image1.boxBlur(BoxCascade.EXACT_LIMIT, BlurMode.APPROXIMATE).equals(image1.boxBlur(BoxCascade.EXACT_LIMIT)) &&
+                        flat.boxBlur(100, BlurMode.APPROXIMATE).equals(flat),
+                "Incorrect approximate box blur:\n" + image1.boxBlur(BoxCascade.EXACT_LIMIT, BlurMode.APPROXIMATE) +
+                        flat.boxBlur(100, BlurMode.APPROXIMATE));
+
+        System.out.println("Testing summed-area filters.");
+        PixImg blurred2 = image2.blankCopy();
+        new BoxBlur(2, 3, 2).blur(image2.getStorage(), blurred2.getStorage(), 1);
+        doTest(image1.boxFilter(1).equals(image1.boxBlur(1)) && image2.boxFilter(1).equals(image2.boxBlur(1)) &&
+                        image2.boxFilter(2).equals(blurred2) && image1.boxFilter(0).equals(image1),
+                "Incorrect box filter:\n" + image1.boxFilter(1) + image2.boxFilter(2));
+        doTest(image1.adaptiveThreshold(1, 0).equals(array2PixImg(new int[][]{{0, 0, 255},
+                        {0, 0, 255},
+                        {0, 255, 255}})) &&
+                        flat.normalizeContrast(1).equals(array2PixImg(new int[][]{{128, 128, 128, 128, 128},
+                                {128, 128, 128, 128, 128},
+                                {128, 128, 128, 128, 128},
+                                {128, 128, 128, 128, 128}})),
+                "Incorrect adaptive threshold or contrast normalization:\n" + image1.adaptiveThreshold(1, 0) +
+                        flat.normalizeContrast(1));
+
+        System.out.println("Testing the buffer pool.");
+        PixImg large = new PixImg(64, 64);
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                large.setPixel(x, y, (x * 7) % 256, (y * 13) % 256, (x * y) % 256);
+            }
+        }
+        PixImg expected = large.boxBlur(3);
+        PixImg blurred = large.boxBlur(3);
+        BufferPool pool = BufferPool.getDefault();
+        long hits = pool.getHits();
+        int outstanding = pool.getOutstanding();
+        blurred.release();
+        blurred.close();
+        boolean released;
+        try {
+            blurred.getRed(0, 0);
+            released = false;
+        } catch (IllegalStateException e) {
+            released = true;
+        }
+        PixImg reused = large.boxBlur(3);
+        doTest(released && reused.equals(expected) && pool.getHits() == hits + 2 &&
+                        pool.getOutstanding() == outstanding,
+                "Incorrect buffer pool reuse:\n" + pool);
+        reused.release();
+
+        System.out.println("Testing approximate blurring of a 64x64 image against unrounded passes.");
+        for (int numIterations : new int[]{20, 100}) {
+            PixImg approximate = large.boxBlur(numIterations, BlurMode.APPROXIMATE);
+            double error = maxError(approximate, unroundedBoxBlur(large, numIterations));
+            doTest(new BoxCascade(64, 64, numIterations).getRadii().length > 0 && error <= BoxCascade.MAX_ERROR,
+                    "Approximate blur of " + numIterations + " iterations is off by " + error +
+                            " levels; at most " + BoxCascade.MAX_ERROR + " allowed.");
+            approximate.release();
+        }
+
+        System.out.println("Testing metrics.");
+        long blurs = Metrics.getStats().getRuns("boxBlur");
+        image1.boxBlur(1);
+        doTest(Metrics.getStats().getRuns("boxBlur") == blurs + 1 &&
+                        Metrics.getStats().toJSON().contains("\"boxBlur\": {\"runs\": " + (blurs + 1)) &&
+                        Metrics.getStats().toPrometheus().contains("pix_operation_runs_total{operation=\"boxBlur\"} " +
+                                (blurs + 1)),
+                "Incorrect boxBlur metrics:\n" + Metrics.getStats().toJSON());
+
+        if (failures > 0) {
+            System.err.println("Failed tests: " + failures);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * referenceBoxBlur() blurs image numIterations times a pixel at a time
+     * with PixelMatrix.neighborhoodAverage(), the definition boxBlur()
+     * must match.
+     */
+    private static PixImg referenceBoxBlur(PixImg image, int numIterations) {
+        PixelMatrix in = new PixelMatrix(image.getStorage());
+        for (int i = 0; i < numIterations; i++) {
+            PixelMatrix out = new PixelMatrix(image.getWidth(), image.getHeight());
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int y = 0; y < image.getHeight(); y++) {
+                    out.setRGB(x, y, in.neighborhoodAverage(x, y).toRGB());
+                }
+            }
+            in = out;
+        }
+        return rows2PixImg(in.getStorage());
+    }
+
+    /**
+     * referenceSobelEdges() detects edges a pixel at a time with
+     * PixelMatrix.convolve() and mag2gray(), the definition sobelEdges()
+     * must match.
+     */
+    private static PixImg referenceSobelEdges(PixImg image) {
+        short[][] gx = {{-1, -2, -1}, {0, 0, 0}, {1, 2, 1}};
+        short[][] gy = {{-1, 0, 1}, {-2, 0, 2}, {-1, 0, 1}};
+        PixelMatrix in = new PixelMatrix(image.getStorage());
+        PixImg out = new PixImg(image.getWidth(), image.getHeight());
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                Pixel px = in.convolve(x, y, gx);
+                Pixel py = in.convolve(x, y, gy);
+                long energy = (long) px.getRed() * px.getRed() + (long) px.getGreen() * px.getGreen() +
+                        (long) px.getBlue() * px.getBlue() + (long) py.getRed() * py.getRed() +
+                        (long) py.getGreen() * py.getGreen() + (long) py.getBlue() * py.getBlue();
+                short gray = mag2gray(energy);
+                out.setPixel(x, y, gray, gray, gray);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * unroundedBoxBlur() returns numIterations 3x3 box blurs of image, as
+     * boxBlur() would compute them without rounding: [channel][x][y]
+     * intensities in double precision.
+     */
+    private static double[][][] unroundedBoxBlur(PixImg image, int numIterations) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[][][] in = new double[3][width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                in[0][x][y] = image.getRed(x, y);
+                in[1][x][y] = image.getGreen(x, y);
+                in[2][x][y] = image.getBlue(x, y);
+            }
+        }
+        for (int i = 0; i < numIterations; i++) {
+            double[][][] out = new double[3][width][height];
+            for (int c = 0; c < 3; c++) {
+                for (int x = 0; x < width; x++) {
+                    for (int y = 0; y < height; y++) {
+                        double sum = 0;
+                        int count = 0;
+                        for (int u = Math.max(x - 1, 0); u <= Math.min(x + 1, width - 1); u++) {
+                            for (int v = Math.max(y - 1, 0); v <= Math.min(y + 1, height - 1); v++) {
+                                sum += in[c][u][v];
+                                count++;
+                            }
+                        }
+                        out[c][x][y] = sum / count;
+                    }
+                }
+            }
+            in = out;
+        }
+        return in;
+    }
+
+    /**
+     * maxError() returns the largest difference between a channel of image
+     * and the same channel of reference.
+     */
+    private static double maxError(PixImg image, double[][][] reference) {
+        double error = 0;
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                error = Math.max(error, Math.abs(image.getRed(x, y) - reference[0][x][y]));
+                error = Math.max(error, Math.abs(image.getGreen(x, y) - reference[1][x][y]));
+                error = Math.max(error, Math.abs(image.getBlue(x, y) - reference[2][x][y]));
+            }
+        }
+        return error;
+    }
+
+    /**
+     * rows2PixImg() reads every row of rows, in order, into a new PixImg.
+     */
+    private static PixImg rows2PixImg(RowSource rows) {
+        PixImg image = new PixImg(rows.getWidth(), rows.getHeight());
+        int[] row = new int[rows.getWidth()];
+        PixelStorage storage = image.getStorage();
+        for (int y = 0; y < rows.getHeight(); y++) {
+            rows.readRow(y, row);
+            storage.setRGB(y * rows.getWidth(), row, 0, rows.getWidth());
+        }
+        return image;
+    }
+}
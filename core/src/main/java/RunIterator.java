@@ -26,18 +26,22 @@
  *  modified by setPixel().)
  */
 
-import data.*;
+import data.Pixel;
+import data.RunTable;
 
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-public class RunIterator extends LinkedListIterator {
+public class RunIterator implements Iterator<int[]> {
 
   /**
    *  Define any variables associated with a RunIterator object here.
    *  These variables MUST be private.
    */
 
-  private LinkedListIterator<Run> runIterator;
+  private RunTable.Cursor cursor;
+  // True if cursor already points at the run the next call to next() returns.
+  private boolean hasRun;
 
   /**
    *  RunIterator() constructs a new iterator starting with a specified run.
@@ -52,24 +56,46 @@ public class RunIterator extends LinkedListIterator {
   // constructor that you want so that your RunLengthEncoding.iterator()
   // implementation can construct a RunIterator that points to the first run of
   // the encoding.
-  RunIterator(LinkedList<Run> runList) {
-    super(runList);
+  RunIterator(RunTable runs) {
+    cursor = runs.cursor();
+    hasRun = cursor.next();
   }
 
-  public int[] next() {
-    // Construct a new array of 4 ints, fill in its values, and return it.
-    // Don't forget to advance the RunIterator's pointer so that the next
-    // call to next() will return the subsequent run.
-
-    if (hasNext()) {
-      Run run = runIterator.next();
-      Pixel pixel = run.getPixel();
+  /**
+   *  hasNext() returns true if this RunIterator has more runs.  If it returns
+   *  false, then the next call to next() may throw an exception.
+   *
+   *  @return true if the iterator has more elements.
+   */
+  public boolean hasNext() {
+    return hasRun;
+  }
 
-      // Return a four-element array representing this run.
-      int[] runArray = {run.getRunLength(), pixel.getRed(), pixel.getGreen(), pixel.getBlue()};
-      return runArray;
-    } else {
+  /**
+   *  next() returns an array of 4 ints that specify the current run in the
+   *  sequence.  It also advances the iterator so that the next time next() is
+   *  invoked, it will return the subsequent run.  The array contains, in
+   *  order, the run length, red intensity, green intensity and blue intensity.
+   *
+   *  @return an array of 4 ints specifying the current run in the sequence.
+   *  @throws NoSuchElementException if the iterator has no more runs.
+   */
+  public int[] next() {
+    if (!hasRun) {
       throw new NoSuchElementException();
     }
+    int argb = cursor.getRGB();
+    int[] runArray = {cursor.getLength(), Pixel.red(argb), Pixel.green(argb), Pixel.blue(argb)};
+    hasRun = cursor.next();
+    return runArray;
+  }
+
+  /**
+   *  remove() would remove from the underlying run-length encoding the run
+   *  that was most recently returned by next().  Runs cannot be removed from
+   *  an encoding, so it always throws.
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
   }
 }
@@ -21,21 +21,23 @@
  *  See the README file accompanying this project for additional details.
  */
 
-import data.LinkedListIterator;
 import data.Pixel;
-import data.LinkedList;
-import data.Run;
+import data.RowSource;
+import data.RunTable;
+import data.TiledExecutor;
+import metrics.Metrics;
 
-import java.util.Iterator;
+import java.util.function.IntUnaryOperator;
 
-public class RunLengthEncoding implements Iterable {
+public class RunLengthEncoding implements Iterable<int[]> {
 
     /**
      * Define any variables associated with a RunLengthEncoding object here.
      * These variables MUST be private.
      */
 
-    private LinkedList<Run> list;
+    // The runs, in row-major order, as packed colours.
+    private RunTable runs;
 
     private int width;
     private int height;
@@ -53,12 +55,8 @@ public class RunLengthEncoding implements Iterable {
         this.width = width;
         this.height = height;
 
-        this.list = new LinkedList<>();
-
-        int runLength = width * height;
-
-        Run newRun = new Run(runLength, Pixel.zeroPixel());
-        list.add(newRun);
+        runs = new RunTable(width * height);
+        runs.append(width * height, Pixel.pack(0, 0, 0));
     }
 
     /**
@@ -84,19 +82,17 @@ public class RunLengthEncoding implements Iterable {
 
     public RunLengthEncoding(int width, int height, int[] red, int[] green,
                              int[] blue, int[] runLengths) {
+        Metrics.Sample sample = Metrics.start("rleFromRuns");
         this.width = width;
         this.height = height;
 
-        list = new LinkedList<>();
+        runs = new RunTable(width * height);
 
         for (int i = 0; i < runLengths.length; i++) {
-            // Get run length for the ith run
-            // Add a run with length runLength and the right color
-            int runLength = runLengths[i];
-            Run newRun = new Run(runLength, red[i], green[i], blue[i]);
-
-            list.add(newRun);
+            // Equal neighbouring runs are merged as they are appended
+            runs.append(runLengths[i], Pixel.pack(red[i], green[i], blue[i]));
         }
+        sample.stop((long) width * height, 0, 0);
     }
 
     /**
@@ -108,11 +104,19 @@ public class RunLengthEncoding implements Iterable {
      */
     public RunIterator iterator() {
         // Replace the following line with your solution.
-        return new RunIterator(list);
+        return new RunIterator(runs);
         // You'll want to construct a new RunIterator, but first you'll need to
         // write a constructor in the RunIterator class.
     }
 
+    /**
+     * getRuns() returns the runs of this encoding, for classes such as
+     * TIFFEncoder that write them out directly.
+     */
+    RunTable getRuns() {
+        return runs;
+    }
+
     /**
      * toPixImg() converts a run-length encoding of an image into a PixImg
      * object.
@@ -122,22 +126,8 @@ public class RunLengthEncoding implements Iterable {
     public PixImg toPixImg() {
         PixImg out = new PixImg(width, height);
 
-        int count = 0;
-        Iterator<Run> iterator = list.iterator();
-        while (iterator.hasNext()) {
-            Run run = iterator.next();
-            // Add as many pixels as the run length dictates
-            for (int i = 0; i < run.getRunLength(); i++) {
-                // Translate element count to grid position
-                int xCoordinate = count % width;
-                int yCoordinate = count / width;
-                // Set the pixel in the image
-                Pixel pixel = run.getPixel();
-                out.setPixel(xCoordinate, yCoordinate, pixel.getRed(), pixel.getGreen(), pixel.getBlue());
-
-                count++;
-            }
-        }
+        // Fill whole runs straight into the image's storage
+        runs.copyTo(out.getStorage(), TiledExecutor.getDefault());
 
         return out;
     }
@@ -157,43 +147,33 @@ public class RunLengthEncoding implements Iterable {
      * @param image is the PixImg to run-length encode.
      */
     public RunLengthEncoding(PixImg image) {
-        // Your solution here, but you should probably leave the following line
-        // at the end.
-        width = image.getWidth();
-        height = image.getHeight();
+        this(image.getStorage());
+    }
 
-        list = new LinkedList<>();
+    /**
+     * RunLengthEncoding() (with a RowSource) run-length encodes an image that
+     * is read one row at a time, so the image never needs to be decoded into
+     * a PixImg.  Runs are found by comparing packed colours as each row is
+     * scanned, and a run may carry on from one row into the next.
+     *
+     * @param source supplies the rows of the image to encode.
+     */
+    public RunLengthEncoding(RowSource source) {
+        Metrics.Sample sample = Metrics.start("rleEncode");
+        width = source.getWidth();
+        height = source.getHeight();
 
-        int numberOfPixels = width * height;
+        runs = new RunTable(width * height);
 
-        // Convert PixImg into array of pixels for easier processing
-        Pixel[] pixels = new Pixel[numberOfPixels];
-        // Go in row-major order
+        int[] row = new int[width];
         for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int red = image.getRed(x, y);
-                int green = image.getGreen(x, y);
-                int blue = image.getBlue(x, y);
-                pixels[y*width + x] = new Pixel(red, green, blue);
-            }
-        }
-
-        // Walk through the list, finding runs and adding them to the RunList
-        for (int i = 0; i < pixels.length; i++) {
-            Pixel pixel = pixels[i];
-
-            // Loop through list while subsequent pixels are equal to count length of run
-            int runLength = 1;
-            while (i + runLength < pixels.length && pixel.equals(pixels[i + runLength])) {
-                runLength++;
-            }
-            i += runLength - 1;
-
-            Run run = new Run(runLength, pixel);
-            list.add(run);
+            source.readRow(y, row);
+            // A run that carries on from the last row is merged into it
+            runs.appendRow(row, width);
         }
 
         check();
+        sample.stop((long) width * height, 0, 0);
     }
 
 
@@ -203,32 +183,29 @@ public class RunLengthEncoding implements Iterable {
      * all run lengths does not equal the number of pixels in the image.
      */
     public void check() {
-        Iterator<Run> runIterator = list.iterator();
+        RunTable.Cursor cursor = runs.cursor();
 
-        if (!runIterator.hasNext()) {
-            // If list is empty, return
+        if (!cursor.next()) {
+            // If there are no runs, return
             return;
         }
 
         // Load first run
-        Run prevRun = runIterator.next();
-        int runLengthSum = prevRun.getRunLength();
-
-        while (runIterator.hasNext()) {
-            // Iterate through the list, comparing the current run to the previous run
-            Run currentRun = runIterator.next();
+        int prevColor = cursor.getRGB();
+        int runLengthSum = cursor.getLength();
 
-            if (currentRun.equals(prevRun)) {
+        while (cursor.next()) {
+            // Iterate through the runs, comparing the current run to the previous run
+            if (cursor.getRGB() == prevColor) {
                 System.err.println("Check failed. Subsequent pixels equal.");
                 return;
             }
 
-            runLengthSum += currentRun.getRunLength();
-            prevRun = currentRun;
-
+            runLengthSum += cursor.getLength();
+            prevColor = cursor.getRGB();
         }
 
-        if (runLengthSum != width * height) {
+        if (runLengthSum != width * height || !runs.isFull()) {
             System.err.println("Check failed. Incorrect dimensions.");
         }
     }
@@ -244,6 +221,9 @@ public class RunLengthEncoding implements Iterable {
      * coordinate should be overwritten and all others should remain the same.
      * The updated run-length encoding should be compressed as much as possible;
      * there should not be two consecutive runs with exactly the same RGB color.
+     * <p/>
+     * As with PixImg.setPixel(), if any of the three color intensities is NOT
+     * in the range 0...255, then this method does NOT change the encoding.
      *
      * @param x     the x-coordinate of the pixel to modify.
      * @param y     the y-coordinate of the pixel to modify.
@@ -252,51 +232,146 @@ public class RunLengthEncoding implements Iterable {
      * @param blue  the new blue intensity to store at coordinate (x, y).
      */
     public void setPixel(int x, int y, short red, short green, short blue) {
-        // Convert (x, y) location into pixel number. First pixel is 1.
-        int pixelIndex = y * width + x + 1;
-
-        // Go through the run list to find the run containing the pixel
-        LinkedListIterator<Run> iterator = list.iterator();
+        // The run table finds the run by binary search and splits or merges
+        // runs in place, so there is no need to check() afterwards.
+        if (isIntensity(red) && isIntensity(green) && isIntensity(blue)) {
+            runs.setRGB(y * width + x, Pixel.pack(red, green, blue));
+        }
+    }
 
-        Run currentRun = iterator.next();
-        int runLengthTotal = currentRun.getRunLength();
+    private static boolean isIntensity(short value) {
+        return value >= 0 && value <= 255;
+    }
 
-        // Iterate until we find the run that contains the target pixel
-        while (runLengthTotal < pixelIndex && iterator.hasNext()) {
-            currentRun = iterator.next();
-            runLengthTotal += currentRun.getRunLength();
+    /**
+     * withPixel() returns a new run-length encoding with the specified color
+     * stored at (x, y), as setPixel() would store it, and leaves "this"
+     * encoding unchanged.  The two share every page of runs (see
+     * data.RunTable) except the one holding (x, y), so an edit costs about
+     * as much as setPixel() however large the image is.  If any intensity
+     * is out of the range 0...255, the new encoding is an unchanged copy.
+     *
+     * @param x     the x-coordinate of the pixel to modify.
+     * @param y     the y-coordinate of the pixel to modify.
+     * @param red   the new red intensity to store at coordinate (x, y).
+     * @param green the new green intensity to store at coordinate (x, y).
+     * @param blue  the new blue intensity to store at coordinate (x, y).
+     * @return the edited encoding.
+     */
+    public RunLengthEncoding withPixel(int x, int y, short red, short green, short blue) {
+        if (!(isIntensity(red) && isIntensity(green) && isIntensity(blue))) {
+            return snapshot();
         }
+        return new RunLengthEncoding(width, height, runs.withRGB(y * width + x, Pixel.pack(red, green, blue)));
+    }
 
-        // If the pixel is the same, there is nothing to do
-        if (currentRun.getRed() == red && currentRun.getGreen() == green && currentRun.getBlue() == blue) {
-            return;
-        }
+    /**
+     * snapshot() returns a copy of this run-length encoding that later calls
+     * to setPixel() on "this" one do not change, and vice versa.  The copy
+     * shares the runs until either is changed, and then only the pages that
+     * are changed are copied, so a snapshot is cheap to take.
+     * <p/>
+     * A snapshot that nobody changes can be read, and iterated, by any
+     * number of threads without locking while an editor thread goes on
+     * changing "this" encoding: hand it to them through a volatile field, a
+     * concurrent collection or an executor.
+     *
+     * @return a copy of this encoding.
+     */
+    public RunLengthEncoding snapshot() {
+        return new RunLengthEncoding(width, height, runs.snapshot());
+    }
 
-        // If the run is a single pixel, just replace it
-        if (currentRun.getRunLength() == 1) {
-            iterator.set(new Run(1, red, green, blue));
-            return;
+
+    /**
+     *  The following methods work on the runs directly, without decoding the
+     *  image, so their cost grows with the number of runs rather than the
+     *  number of pixels.  Each returns a new encoding and leaves "this" one
+     *  unchanged.
+     */
+
+    /**
+     * RunLengthEncoding() (with a RunTable) wraps runs that have already been
+     * built for an image of the given size, such as runs decoded straight from
+     * a file.
+     */
+    RunLengthEncoding(int width, int height, RunTable runs) {
+        this.width = width;
+        this.height = height;
+        this.runs = runs;
+    }
+
+    /**
+     * transform() maps each channel of every run through a lookup table.
+     *
+     * @param redMap   the new red intensity for each old one, 256 entries in 0...255.
+     * @param greenMap the new green intensity for each old one.
+     * @param blueMap  the new blue intensity for each old one.
+     * @return the transformed encoding.
+     */
+    public RunLengthEncoding transform(final int[] redMap, final int[] greenMap, final int[] blueMap) {
+        if (redMap.length < 256 || greenMap.length < 256 || blueMap.length < 256) {
+            throw new IllegalArgumentException("Lookup tables need 256 entries");
         }
-        // The run is more than a single pixel
-        int offset = pixelIndex - (runLengthTotal - currentRun.getRunLength());
-
-        if (offset == 1) {
-            // If the target pixel is at the start of a run, add the new run before
-            iterator.insertBefore(new Run(1, red, green, blue));
-            iterator.set(new Run(currentRun.getRunLength() - 1, currentRun.getPixel()));
-        } else if (offset == currentRun.getRunLength()) {
-            // If target pixel is at end, add new run after
-            iterator.insertAfter(new Run(1, red, green, blue));
-            iterator.set(new Run(currentRun.getRunLength() - 1, currentRun.getPixel()));
-        } else {
-            // If target pixel is in middle, add new runs on either side
-            iterator.insertBefore(new Run(offset - 1, currentRun.getPixel()));
-            iterator.insertAfter(new Run(currentRun.getRunLength() - offset, currentRun.getPixel()));
-            iterator.set(new Run(1, red, green, blue));
+        return new RunLengthEncoding(width, height, runs.map(new IntUnaryOperator() {
+            @Override
+            public int applyAsInt(int argb) {
+                return Pixel.pack(redMap[Pixel.red(argb)], greenMap[Pixel.green(argb)],
+                        blueMap[Pixel.blue(argb)]);
+            }
+        }));
+    }
+
+    /**
+     * invert() returns the negative of the image: each intensity i becomes
+     * 255 - i.
+     */
+    public RunLengthEncoding invert() {
+        int[] map = new int[256];
+        for (int i = 0; i < 256; i++) {
+            map[i] = 255 - i;
         }
+        return transform(map, map, map);
+    }
 
+    /**
+     * threshold() returns a black and white image: a run becomes white if the
+     * mean of its red, green and blue intensities is at least level, and
+     * black otherwise.
+     *
+     * @param level the smallest mean intensity that becomes white.
+     */
+    public RunLengthEncoding threshold(final int level) {
+        return new RunLengthEncoding(width, height, runs.map(new IntUnaryOperator() {
+            @Override
+            public int applyAsInt(int argb) {
+                int mean = (Pixel.red(argb) + Pixel.green(argb) + Pixel.blue(argb)) / 3;
+                return mean >= level ? Pixel.pack(255, 255, 255) : Pixel.pack(0, 0, 0);
+            }
+        }));
+    }
 
-        check();
+    /**
+     * crop() returns rows y0...y1 - 1 of the image.
+     *
+     * @param y0 the first row to keep.
+     * @param y1 one past the last row to keep.
+     */
+    public RunLengthEncoding crop(int y0, int y1) {
+        if (y0 < 0 || y1 > height || y0 > y1) {
+            throw new IllegalArgumentException("Cannot crop rows " + y0 + "..." + y1 + " of " + height);
+        }
+        return new RunLengthEncoding(width, y1 - y0, runs.slice(y0 * width, y1 * width));
+    }
+
+    /**
+     * flipHorizontal() returns the mirror image, with every row reversed.
+     */
+    public RunLengthEncoding flipHorizontal() {
+        if (width == 0) {
+            return new RunLengthEncoding(width, height, runs.slice(0, 0));
+        }
+        return new RunLengthEncoding(width, height, runs.flipRows(width));
     }
 
 
@@ -307,9 +382,13 @@ public class RunLengthEncoding implements Iterable {
      */
 
 
+    // The number of failed tests, so that main() can exit with an error
+    // status for the build.
+    private static int failures;
+
     /**
      * doTest() checks whether the condition is true and prints the given error
-     * message if it is not.
+     * message, and counts the failure, if it is not.
      *
      * @param b   the condition to check.
      * @param msg the error message to print if the condition is false.
@@ -318,6 +397,7 @@ public class RunLengthEncoding implements Iterable {
         if (b) {
             System.out.println("Good.");
         } else {
+            failures++;
             System.err.println(msg);
         }
     }
@@ -396,7 +476,11 @@ public class RunLengthEncoding implements Iterable {
      */
     public String toString() {
         // Replace the following line with your solution.
-        return list.toString();
+        StringBuilder result = new StringBuilder("[  ");
+        for (int[] run : this) {
+            result.append(String.format("Run[%d,%d,%d,%d], ", run[0], run[1], run[2], run[3]));
+        }
+        return result.append("]").toString();
     }
 
     /**
@@ -446,8 +530,6 @@ public class RunLengthEncoding implements Iterable {
         doTest(rle1.toPixImg().equals(image1),
                 "Setting RLE1[1][0] = 42 fails.");
 
-        System.exit(0);
-
         System.out.println("Testing setPixel() on a 3x3 encoding.");
         setAndCheckRLE(rle1, 0, 1, 2);
         image1.setPixel(0, 1, (short) 2, (short) 2, (short) 2);
@@ -580,5 +662,76 @@ public class RunLengthEncoding implements Iterable {
         image4.setPixel(1, 0, (short) 1, (short) 1, (short) 1);
         doTest(rle4.toPixImg().equals(image4),
                 "Setting RLE4[1][0] = 1 fails.");
+
+        RunLengthEncoding rle5 = new RunLengthEncoding(array2PixImg(new int[][]{{0, 5},
+                {1, 6},
+                {2, 7},
+                {3, 8},
+                {4, 9}}));
+
+        System.out.println("Testing invert() on a 5x2 encoding.");
+        doTest(rle5.invert().toPixImg().equals(array2PixImg(new int[][]{{255, 250},
+                        {254, 249},
+                        {253, 248},
+                        {252, 247},
+                        {251, 246}})),
+                "Inverting RLE5 fails.");
+
+        System.out.println("Testing threshold() on a 5x2 encoding.");
+        RunLengthEncoding thresholded = rle5.threshold(5);
+        doTest(thresholded.toPixImg().equals(array2PixImg(new int[][]{{0, 255},
+                        {0, 255},
+                        {0, 255},
+                        {0, 255},
+                        {0, 255}})),
+                "Thresholding RLE5 at 5 fails.");
+        thresholded.check();
+
+        System.out.println("Testing crop() on a 5x2 encoding.");
+        doTest(rle5.crop(1, 2).toPixImg().equals(array2PixImg(new int[][]{{5}, {6}, {7}, {8}, {9}})),
+                "Cropping RLE5 to row 1 fails.");
+
+        System.out.println("Testing flipHorizontal() on a 5x2 encoding.");
+        doTest(rle5.flipHorizontal().toPixImg().equals(array2PixImg(new int[][]{{4, 9},
+                        {3, 8},
+                        {2, 7},
+                        {1, 6},
+                        {0, 5}})),
+                "Flipping RLE5 fails.");
+
+        System.out.println("Testing snapshot() and withPixel() on a 5x2 encoding.");
+        RunLengthEncoding snapshot = rle5.snapshot();
+        RunLengthEncoding edited = rle5.withPixel(0, 0, (short) 9, (short) 9, (short) 9);
+        rle5.setPixel(4, 1, (short) 0, (short) 0, (short) 0);
+        doTest(snapshot.toPixImg().equals(array2PixImg(new int[][]{{0, 5}, {1, 6}, {2, 7}, {3, 8}, {4, 9}})) &&
+                        edited.toPixImg().equals(array2PixImg(new int[][]{{9, 5}, {1, 6}, {2, 7}, {3, 8}, {4, 9}})) &&
+                        rle5.toPixImg().equals(array2PixImg(new int[][]{{0, 5}, {1, 6}, {2, 7}, {3, 8}, {4, 0}})),
+                "Snapshots of RLE5 do not keep their pixels.");
+
+        System.out.println("Testing setPixel() and withPixel() with out-of-range intensities.");
+        PixImg before = edited.toPixImg();
+        edited.setPixel(1, 0, (short) 256, (short) 0, (short) 0);
+        doTest(edited.toPixImg().equals(before) &&
+                        edited.withPixel(2, 1, (short) 0, (short) -1, (short) 0).toPixImg().equals(before),
+                "Out-of-range intensities changed an encoding.");
+
+        System.out.println("Testing snapshot() and withPixel() on a 1024x1024 encoding.");
+        RunLengthEncoding large = new RunLengthEncoding(1024, 1024);
+        RunLengthEncoding black = large.snapshot();
+        RunLengthEncoding corner = black.withPixel(0, 0, (short) 255, (short) 255, (short) 255);
+        large.setPixel(1023, 1023, (short) 1, (short) 2, (short) 3);
+        PixImg largeImage = large.toPixImg();
+        PixImg cornerImage = corner.toPixImg();
+        doTest(black.toPixImg().equals(new PixImg(1024, 1024)) &&
+                        largeImage.getBlue(1023, 1023) == 3 && largeImage.getRed(0, 0) == 0 &&
+                        cornerImage.getRed(0, 0) == 255 && cornerImage.getBlue(1023, 1023) == 0,
+                "Snapshots of a large encoding do not keep their pixels.");
+        large.check();
+        corner.check();
+
+        if (failures > 0) {
+            System.err.println("Failed tests: " + failures);
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,17 @@
+package data;
+
+/**
+ * The BlurMode enum says how many-iteration box blurs are computed.
+ * <pre>
+ *     EXACT         numIterations 3x3 passes, each rounding toward zero, as
+ *                   the spec describes; the cost grows with numIterations
+ *     APPROXIMATE   a BoxCascade of a few wider box passes with the same
+ *                   spread; the cost hardly grows with numIterations, and
+ *                   each channel is within BoxCascade.MAX_ERROR of the
+ *                   unrounded blur
+ * </pre>
+ */
+public enum BlurMode {
+    EXACT,
+    APPROXIMATE
+}
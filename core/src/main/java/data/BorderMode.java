@@ -0,0 +1,51 @@
+package data;
+
+/**
+ * The BorderMode enum says what a convolution sees when its kernel hangs off
+ * the edge of the image.  Writing the row abcd and its neighbours:
+ * <pre>
+ *     REPLICATE   aaa|abcd|ddd   the nearest edge pixel (PixelMatrix.convolve's rule)
+ *     ZERO        000|abcd|000   black
+ *     WRAP        bcd|abcd|abc   the opposite edge, as if the image were tiled
+ *     MIRROR      dcb|abcd|cba   reflected about the edge pixel
+ * </pre>
+ * The rule is applied to x and y separately, so a corner sees (for example)
+ * the corner pixel under REPLICATE.
+ */
+public enum BorderMode {
+    REPLICATE,
+    ZERO,
+    WRAP,
+    MIRROR;
+
+    /**
+     * map() returns the index in 0...size - 1 that stands in for index i, or
+     * -1 if the pixel there is black (ZERO mode).
+     *
+     * @param i    a row or column index, possibly outside the image.
+     * @param size the number of rows or columns in the image.
+     * @return the index to read instead, or -1 for black.
+     */
+    public int map(int i, int size) {
+        if (i >= 0 && i < size) {
+            return i;
+        }
+        switch (this) {
+            case REPLICATE:
+                return i < 0 ? 0 : size - 1;
+            case ZERO:
+                return -1;
+            case WRAP:
+                return Math.floorMod(i, size);
+            case MIRROR:
+                if (size == 1) {
+                    return 0;
+                }
+                int period = 2 * size - 2;
+                int j = Math.floorMod(i, period);
+                return j < size ? j : period - j;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+}
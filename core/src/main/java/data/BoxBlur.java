@@ -0,0 +1,300 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A BoxBlur repeatedly blurs an image with a square box filter.  Each output
+ * pixel is the average of the input pixels within radius of it (a 3x3 window
+ * for radius 1), counting only the neighbours that lie inside the image and
+ * rounding toward zero, exactly as PixelMatrix.neighborhoodAverage() does.
+ * <p/>
+ * The filter is separable, so each row is first summed horizontally with a
+ * running sum, and the row sums are then accumulated into running column
+ * sums.  Every pixel costs a constant number of adds regardless of radius,
+ * and because the sums are exact integers the result is bit-identical to
+ * averaging each window directly.
+ * <p/>
+ * The passes are run by a PassRunner, which splits each into row bands that
+ * run in parallel; a band reads radius halo rows above and below itself
+ * from the previous pass's output.
+ * <p/>
+ * stream() applies the same passes to rows as they are read from a
+ * RowSource, as stages of a streaming pipeline.
+ * <p/>
+ * Where VectorSupport finds SIMD kernels, the column sums are updated and
+ * divided a vector of pixels at a time; the results are the same.
+ * <p/>
+ * Working memory is a few rows of sums for each band that runs at the same
+ * time, plus the PassRunner's scratch image, so the heap used does not grow
+ * with the height of the image.  A BoxBlur keeps its rows of sums between
+ * calls; build one for each image size and blur with it from one thread at
+ * a time.
+ */
+public class BoxBlur {
+
+    private final int width;
+    private final int height;
+    private final int radius;
+
+    private final PassRunner<Pass> runner;
+
+    /**
+     * BoxBlur() constructs a 3x3 box blur for images of the specified size.
+     */
+    public BoxBlur(int width, int height) {
+        this(width, height, 1);
+    }
+
+    /**
+     * BoxBlur() constructs a (2 * radius + 1)-square box blur for images of
+     * the specified size.
+     */
+    public BoxBlur(int width, int height, int radius) {
+        this(width, height, radius, TiledExecutor.getDefault());
+    }
+
+    /**
+     * BoxBlur() constructs a (2 * radius + 1)-square box blur for images of
+     * the specified size that runs its bands on the given executor.
+     */
+    public BoxBlur(int width, int height, int radius, TiledExecutor executor) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Negative radius " + radius);
+        }
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+
+        runner = new PassRunner<>(width, height, 1, executor, new PassRunner.Factory<Pass>() {
+            @Override
+            public Pass create(int stage) {
+                return new Pass(width, height, radius);
+            }
+        });
+    }
+
+    /**
+     * blur() applies numIterations passes of the box filter to src and leaves
+     * the result in dst.  src is not changed.  src and dst must be different
+     * storages of the size this BoxBlur was built for.  If numIterations is
+     * zero or negative, src is copied to dst unchanged.
+     *
+     * @param src           the image to blur.
+     * @param dst           where to put the blurred image.
+     * @param numIterations the number of passes to apply.
+     */
+    public void blur(PixelStorage src, PixelStorage dst, int numIterations) {
+        if (numIterations <= 0) {
+            runner.checkSizes(src, dst);
+            runner.peek(0).copy(src, dst);
+            return;
+        }
+        runner.run(src, dst, numIterations);
+    }
+
+    /**
+     * stream() returns a RowStage that applies numIterations passes of a
+     * (2 * radius + 1)-square box filter to src as its rows are read.  Each
+     * pass is a stage of its own that keeps 2 * radius + 2 rows of sums, so
+     * the memory used grows with the width and the number of passes but not
+     * with the height.  The rows are the same as blur() would produce.  If
+     * numIterations is zero or negative, src is returned unchanged.
+     *
+     * @param src           the rows to blur, read once each, in order.
+     * @param radius        the radius of the box filter.
+     * @param numIterations the number of passes to apply.
+     */
+    public static RowSource stream(RowSource src, int radius, int numIterations) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Negative radius " + radius);
+        }
+        RowSource out = src;
+        for (int i = 0; i < numIterations; i++) {
+            final RowSource in = out;
+            final Pass pass = new Pass(in.getWidth(), in.getHeight(), radius);
+            out = new RowStage(in.getWidth(), in.getHeight()) {
+                @Override
+                protected void computeRow(int y, int[] row) {
+                    if (y == 0) {
+                        pass.start(in, 0);
+                    }
+                    pass.nextRow(row);
+                }
+            };
+        }
+        return out;
+    }
+
+    /**
+     * A Pass holds the row buffers for one box-filter pass over a band of
+     * rows.  Horizontal sums of recently read rows are kept in a ring so that
+     * each source row is read and summed exactly once per pass.
+     */
+    static class Pass implements PassRunner.Pass {
+
+        private static final VectorKernels KERNELS = VectorSupport.getKernels();
+
+        private final int width;
+        private final int height;
+        private final int radius;
+
+        // Number of pixels each column's window covers, clipped at the edges.
+        private final int[] columnCounts;
+
+        // Horizontal sums of the last 2 * radius + 2 rows, planar by channel:
+        // red sums in [0, width), green in [width, 2 * width), blue after.
+        private final int[][] rowSums;
+        private final int[] columnSums;
+
+        private final int[] row;
+
+        private RowSource src;
+        // The next row nextRow() computes, and whether the window is filled.
+        private int y;
+        private boolean primed;
+
+        Pass(int width, int height, int radius) {
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+
+            columnCounts = new int[width];
+            for (int x = 0; x < width; x++) {
+                columnCounts[x] = Math.min(x + radius, width - 1) - Math.max(x - radius, 0) + 1;
+            }
+
+            rowSums = new int[2 * radius + 2][3 * width];
+            columnSums = new int[3 * width];
+            row = new int[width];
+        }
+
+        /**
+         * run() blurs rows y0...y1 - 1 of src into the same rows of dst.  Only
+         * rows within radius of the band are read from src.
+         */
+        @Override
+        public void run(RowSource src, PixelStorage dst, int y0, int y1) {
+            start(src, y0);
+            for (int y = y0; y < y1; y++) {
+                nextRow(row);
+                dst.setRGB(y * width, row, 0, width);
+            }
+        }
+
+        /**
+         * start() positions the pass at row y0 of src.  The window around y0
+         * is read when the first row is asked for.
+         */
+        void start(RowSource src, int y0) {
+            this.src = src;
+            y = y0;
+            primed = false;
+        }
+
+        /**
+         * nextRow() computes the next blurred row into out.  Source rows are
+         * read in order, each one once, and only as far as radius below the
+         * row being computed.
+         */
+        void nextRow(int[] out) {
+            if (!primed) {
+                // Prime the column sums with the window around row y.
+                Arrays.fill(columnSums, 0);
+                int first = Math.max(y - radius, 0);
+                int last = Math.min(y + radius, height - 1);
+                for (int j = first; j <= last; j++) {
+                    add(columnSums, sumRow(src, j));
+                }
+                primed = true;
+            } else {
+                // Slide the window down one row.
+                if (y + radius < height) {
+                    add(columnSums, sumRow(src, y + radius));
+                }
+                if (y - radius - 1 >= 0) {
+                    subtract(columnSums, rowSums[(y - radius - 1) % rowSums.length]);
+                }
+            }
+
+            int rowCount = Math.min(y + radius, height - 1) - Math.max(y - radius, 0) + 1;
+            if (KERNELS != null) {
+                KERNELS.average(columnSums, columnCounts, rowCount, out);
+            } else {
+                for (int x = 0; x < width; x++) {
+                    int count = columnCounts[x] * rowCount;
+                    out[x] = Pixel.pack(columnSums[x] / count,
+                            columnSums[width + x] / count,
+                            columnSums[2 * width + x] / count);
+                }
+            }
+            y++;
+        }
+
+        /**
+         * sumRow() reads row y of src and stores its horizontal running sums
+         * in the ring, returning the slot it used.
+         */
+        private int[] sumRow(RowSource src, int y) {
+            src.readRow(y, row);
+            int[] sums = rowSums[y % rowSums.length];
+
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int x = 0; x < Math.min(radius, width); x++) {
+                red += Pixel.red(row[x]);
+                green += Pixel.green(row[x]);
+                blue += Pixel.blue(row[x]);
+            }
+
+            for (int x = 0; x < width; x++) {
+                int enter = x + radius;
+                if (enter < width) {
+                    red += Pixel.red(row[enter]);
+                    green += Pixel.green(row[enter]);
+                    blue += Pixel.blue(row[enter]);
+                }
+                int leave = x - radius - 1;
+                if (leave >= 0) {
+                    red -= Pixel.red(row[leave]);
+                    green -= Pixel.green(row[leave]);
+                    blue -= Pixel.blue(row[leave]);
+                }
+                sums[x] = red;
+                sums[width + x] = green;
+                sums[2 * width + x] = blue;
+            }
+            return sums;
+        }
+
+        /**
+         * copy() copies src to dst a row at a time.
+         */
+        void copy(PixelStorage src, PixelStorage dst) {
+            for (int y = 0; y < height; y++) {
+                src.getRGB(y * width, row, 0, width);
+                dst.setRGB(y * width, row, 0, width);
+            }
+        }
+
+        private static void add(int[] total, int[] sums) {
+            if (KERNELS != null) {
+                KERNELS.add(total, sums);
+                return;
+            }
+            for (int i = 0; i < total.length; i++) {
+                total[i] += sums[i];
+            }
+        }
+
+        private static void subtract(int[] total, int[] sums) {
+            if (KERNELS != null) {
+                KERNELS.subtract(total, sums);
+                return;
+            }
+            for (int i = 0; i < total.length; i++) {
+                total[i] -= sums[i];
+            }
+        }
+    }
+}
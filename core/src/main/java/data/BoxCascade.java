@@ -0,0 +1,259 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A BoxCascade approximates numIterations passes of the 3x3 box blur with
+ * PASSES passes of wider box filters, so the cost hardly depends on
+ * numIterations.
+ * <p/>
+ * Along each axis, one 3x3 pass spreads a pixel with variance 2/3, so
+ * numIterations passes spread it with variance 2 * numIterations / 3, and the
+ * combined filter tends to a Gaussian.  A box of radius r has variance
+ * r * (r + 1) / 3, so the cascade picks radii, as nearly equal as it can,
+ * whose r * (r + 1) add up to as close to 2 * numIterations as possible.
+ * Its filter tends to the same Gaussian.  Each pass is a running sum, like
+ * BoxBlur's, so it costs a constant number of adds per pixel whatever the
+ * radius.
+ * <p/>
+ * At the edges, the 3x3 blur averages only the neighbours inside the image.
+ * A wide box that did the same would pull edge pixels toward the interior
+ * much harder than many narrow passes do, so the cascade's boxes reflect the
+ * image about its edge pixels (BorderMode.MIRROR) instead, which tracks the
+ * narrow passes closely.  Sums are divided rounding to nearest.
+ * <p/>
+ * Each channel of the result is within MAX_ERROR of numIterations unrounded
+ * 3x3 passes.  That bound is 255 times the largest L1 distance between the
+ * two filters' rows along one axis (under 0.15 for every image width and
+ * numIterations measured), plus half a level of rounding per pass, and is
+ * only approached by images made to defeat it; on photographs and noise the
+ * largest difference measured was 6 levels and the mean half a level.  For
+ * numIterations up to EXACT_LIMIT, where a cascade would save nothing, the
+ * exact passes are run instead.
+ * <p/>
+ * The exact passes round toward zero, so they can themselves fall below the
+ * unrounded blur by up to a level per pass, and do: after 500 passes over a
+ * photograph, by 90 levels on average.  A BoxCascade does not reproduce that
+ * drift; use BoxBlur when the results must match the spec to the bit.
+ * <p/>
+ * The passes are run by a PassRunner, one stage for each radius.  Like a
+ * BoxBlur, a BoxCascade holds its buffers for reuse across images of its
+ * size, so it must not blur two images at once.
+ */
+public class BoxCascade {
+
+    public static final int PASSES = 4;
+    public static final int EXACT_LIMIT = 2 * PASSES;
+    public static final int MAX_ERROR = 40;
+
+    private final int width;
+    private final int height;
+    private final int numIterations;
+    private final int[] radii;
+
+    private final TiledExecutor executor;
+    private final PassRunner<Pass> runner;
+
+    private BoxBlur exact;
+
+    /**
+     * BoxCascade() constructs a cascade that approximates numIterations 3x3
+     * box blurs of images of the specified size.
+     */
+    public BoxCascade(int width, int height, int numIterations) {
+        this(width, height, numIterations, TiledExecutor.getDefault());
+    }
+
+    /**
+     * BoxCascade() constructs a cascade that approximates numIterations 3x3
+     * box blurs of images of the specified size, running its bands on the
+     * given executor.
+     */
+    public BoxCascade(int width, int height, int numIterations, TiledExecutor executor) {
+        this.width = width;
+        this.height = height;
+        this.numIterations = numIterations;
+        this.executor = executor;
+
+        radii = numIterations > EXACT_LIMIT ? radii(numIterations) : new int[0];
+        runner = new PassRunner<>(width, height, radii.length, executor, new PassRunner.Factory<Pass>() {
+            @Override
+            public Pass create(int stage) {
+                return new Pass(width, height, radii[stage]);
+            }
+        });
+    }
+
+    /**
+     * radii() returns PASSES box radii, largest first and differing by at
+     * most one, whose r * (r + 1) sum to as near 2 * numIterations as
+     * possible.
+     */
+    static int[] radii(int numIterations) {
+        long target = 2L * numIterations;
+        int r = 0;
+        while ((long) PASSES * (r + 1) * (r + 2) <= target) {
+            r++;
+        }
+
+        // Make the first m passes one wider, choosing m to get closest.
+        int bestWider = 0;
+        long bestDistance = Long.MAX_VALUE;
+        for (int m = 0; m <= PASSES; m++) {
+            long sum = (long) m * (r + 1) * (r + 2) + (long) (PASSES - m) * r * (r + 1);
+            if (Math.abs(sum - target) < bestDistance) {
+                bestDistance = Math.abs(sum - target);
+                bestWider = m;
+            }
+        }
+
+        int[] radii = new int[PASSES];
+        for (int i = 0; i < PASSES; i++) {
+            radii[i] = i < bestWider ? r + 1 : r;
+        }
+        return radii;
+    }
+
+    /**
+     * getRadii() returns the radii of the box passes, or an empty array if
+     * the exact passes are run instead.
+     */
+    public int[] getRadii() {
+        return radii.clone();
+    }
+
+    /**
+     * blur() blurs src as numIterations 3x3 box blurs would and leaves the
+     * result in dst.  src is not changed.  src and dst must be different
+     * storages of the size this BoxCascade was built for.  If numIterations
+     * is zero or negative, src is copied to dst unchanged.
+     *
+     * @param src the image to blur.
+     * @param dst where to put the blurred image.
+     */
+    public void blur(PixelStorage src, PixelStorage dst) {
+        if (radii.length == 0) {
+            if (exact == null) {
+                exact = new BoxBlur(width, height, 1, executor);
+            }
+            exact.blur(src, dst, numIterations);
+            return;
+        }
+        runner.run(src, dst, radii.length);
+    }
+
+    /**
+     * A Pass holds the buffers for one mirrored box-filter pass over a band of
+     * rows.  The window is slid down the band by adding the horizontal sums of
+     * the row entering it and subtracting those of the row leaving it; since
+     * a mirrored window can hold the same row twice, those sums are
+     * recomputed rather than kept in a ring.
+     */
+    static class Pass implements PassRunner.Pass {
+
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final long area;
+
+        // Columns that enter and leave the window as it slides right from x,
+        // and the columns in the window at x = 0, after mirroring.
+        private final int[] enter;
+        private final int[] leave;
+        private final int[] initial;
+
+        // Sums planar by channel: red in [0, width), green, then blue.
+        private final int[] enterSums;
+        private final int[] leaveSums;
+        private final long[] columnSums;
+
+        private final int[] row;
+
+        Pass(int width, int height, int radius) {
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+            area = (long) (2 * radius + 1) * (2 * radius + 1);
+
+            enter = new int[width];
+            leave = new int[width];
+            for (int x = 0; x < width; x++) {
+                enter[x] = BorderMode.MIRROR.map(x + radius + 1, width);
+                leave[x] = BorderMode.MIRROR.map(x - radius, width);
+            }
+            initial = new int[2 * radius + 1];
+            for (int i = 0; i < initial.length; i++) {
+                initial[i] = BorderMode.MIRROR.map(i - radius, width);
+            }
+
+            enterSums = new int[3 * width];
+            leaveSums = new int[3 * width];
+            columnSums = new long[3 * width];
+            row = new int[width];
+        }
+
+        /**
+         * run() blurs rows y0...y1 - 1 of src into the same rows of dst.
+         */
+        @Override
+        public void run(RowSource src, PixelStorage dst, int y0, int y1) {
+            Arrays.fill(columnSums, 0);
+            for (int j = y0 - radius; j <= y0 + radius; j++) {
+                sumRow(src, BorderMode.MIRROR.map(j, height), enterSums);
+                add(enterSums, 1);
+            }
+
+            long half = area / 2;
+            for (int y = y0; y < y1; y++) {
+                for (int x = 0; x < width; x++) {
+                    row[x] = Pixel.pack((int) ((columnSums[x] + half) / area),
+                            (int) ((columnSums[width + x] + half) / area),
+                            (int) ((columnSums[2 * width + x] + half) / area));
+                }
+                dst.setRGB(y * width, row, 0, width);
+
+                if (y + 1 < y1) {
+                    sumRow(src, BorderMode.MIRROR.map(y + radius + 1, height), enterSums);
+                    sumRow(src, BorderMode.MIRROR.map(y - radius, height), leaveSums);
+                    add(enterSums, 1);
+                    add(leaveSums, -1);
+                }
+            }
+        }
+
+        /**
+         * sumRow() reads row y of src and stores the mirrored horizontal
+         * window sums of each column in sums.
+         */
+        private void sumRow(RowSource src, int y, int[] sums) {
+            src.readRow(y, row);
+
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int x : initial) {
+                red += Pixel.red(row[x]);
+                green += Pixel.green(row[x]);
+                blue += Pixel.blue(row[x]);
+            }
+
+            for (int x = 0; x < width; x++) {
+                sums[x] = red;
+                sums[width + x] = green;
+                sums[2 * width + x] = blue;
+
+                int in = row[enter[x]];
+                int out = row[leave[x]];
+                red += Pixel.red(in) - Pixel.red(out);
+                green += Pixel.green(in) - Pixel.green(out);
+                blue += Pixel.blue(in) - Pixel.blue(out);
+            }
+        }
+
+        private void add(int[] sums, int sign) {
+            for (int i = 0; i < columnSums.length; i++) {
+                columnSums[i] += sign * sums[i];
+            }
+        }
+    }
+}
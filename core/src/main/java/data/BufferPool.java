@@ -0,0 +1,297 @@
+package data;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A BufferPool recycles the pixel arrays of PACKED_INT storages, so that a
+ * program working through many images of similar sizes stops allocating
+ * (and the garbage collector stops clearing) a fresh image for every result
+ * and intermediate.  create() and createBlank() borrow an array from the
+ * pool; release() gives it back, after which the storage must not be used.
+ * <p/>
+ * Arrays are kept in buckets of capacities eight to each power of two, so
+ * an image is given an array at most an eighth larger than it needs, and
+ * images whose sizes differ by a few rows still share buckets.  Images
+ * smaller than MIN_POOLED_PIXELS, and storages in other layouts, are
+ * allocated and collected as usual; releasing them does nothing.  At most
+ * the maximum retained bytes are kept idle in the pool, and arrays released
+ * beyond that are left to the garbage collector.
+ * <p/>
+ * A borrowed storage that is collected without being released is a leak.
+ * The pool notices it (through a weak reference) the next time it is used,
+ * counts it, and takes the array back.  If tracing is on, it also prints
+ * where the leaked storage was created.
+ * <p/>
+ * The default pool retains up to a quarter of the maximum heap, or the
+ * number of bytes in the pix.pool.bytes system property (0 turns pooling
+ * off); set pix.pool.trace to true to trace leaks.  A BufferPool is
+ * thread-safe.
+ */
+public class BufferPool {
+
+    public static final String SIZE_PROPERTY = "pix.pool.bytes";
+    public static final String TRACE_PROPERTY = "pix.pool.trace";
+
+    public static final int MIN_POOLED_PIXELS = 4096;
+
+    // Bucket capacities per power of two.
+    private static final int BUCKETS_PER_DOUBLING = 8;
+
+    private static final BufferPool DEFAULT = new BufferPool(
+            Long.getLong(SIZE_PROPERTY, Runtime.getRuntime().maxMemory() / 4),
+            Boolean.getBoolean(TRACE_PROPERTY));
+
+    private final long maxRetainedBytes;
+    private final boolean trace;
+
+    // Idle arrays by capacity.
+    private final Map<Integer, ArrayDeque<int[]>> idle = new HashMap<>();
+    private long retainedBytes;
+
+    // Leases of the storages borrowed and not yet released; holding them
+    // here keeps them alive until their storages are collected.
+    private final Set<Lease> leases = Collections.newSetFromMap(new IdentityHashMap<Lease, Boolean>());
+    private final ReferenceQueue<PackedIntStorage> collected = new ReferenceQueue<>();
+
+    private long borrows;
+    private long hits;
+    private long releases;
+    private long leaks;
+
+    /**
+     * BufferPool() constructs an empty pool that keeps at most
+     * maxRetainedBytes of idle arrays, and records where each storage was
+     * created if trace is true.
+     */
+    public BufferPool(long maxRetainedBytes, boolean trace) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("Negative pool size " + maxRetainedBytes);
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.trace = trace;
+    }
+
+    /**
+     * getDefault() returns the pool PixImg and the blurs borrow from.
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * create() returns an all-black storage of the specified size in layout,
+     * borrowed from the pool if the layout is PACKED_INT.
+     */
+    public PixelStorage create(PixelLayout layout, int width, int height) {
+        if (layout == PixelLayout.PACKED_INT) {
+            return borrow(width, height);
+        }
+        return layout.create(width, height);
+    }
+
+    /**
+     * createBlank() returns an all-black storage of the specified size in the
+     * same layout as like, borrowed from the pool if that is PACKED_INT.
+     */
+    public PixelStorage createBlank(PixelStorage like, int width, int height) {
+        if (like instanceof PackedIntStorage) {
+            return borrow(width, height);
+        }
+        return like.createBlank(width, height);
+    }
+
+    /**
+     * release() returns the array of storage to the pool.  storage must not
+     * be used afterward.  Storages the pool did not lend, and storages
+     * already released, are ignored.
+     */
+    public void release(PixelStorage storage) {
+        if (!(storage instanceof PackedIntStorage)) {
+            return;
+        }
+        PackedIntStorage packed = (PackedIntStorage) storage;
+        Lease lease = packed.getLease();
+        if (lease == null || lease.pool != this) {
+            return;
+        }
+        packed.detach();
+        lease.clear();
+        synchronized (this) {
+            if (leases.remove(lease)) {
+                releases++;
+                retain(lease.pixels);
+            }
+            reclaimLeaks();
+        }
+    }
+
+    private PixelStorage borrow(int width, int height) {
+        int count = PixelLayout.pixelCount(width, height);
+        if (count < MIN_POOLED_PIXELS) {
+            return new PackedIntStorage(width, height);
+        }
+        int capacity = capacity(count);
+
+        int[] pixels = null;
+        synchronized (this) {
+            reclaimLeaks();
+            borrows++;
+            ArrayDeque<int[]> bucket = idle.get(capacity);
+            if (bucket != null && !bucket.isEmpty()) {
+                pixels = bucket.pop();
+                retainedBytes -= 4L * capacity;
+                hits++;
+            }
+        }
+        if (pixels == null) {
+            pixels = new int[capacity];
+        }
+
+        PackedIntStorage storage = new PackedIntStorage(width, height, pixels);
+        Lease lease = new Lease(this, storage, pixels, trace ? new Throwable("Created here") : null);
+        storage.setLease(lease);
+        synchronized (this) {
+            leases.add(lease);
+        }
+        return storage;
+    }
+
+    /**
+     * capacity() rounds count up to the capacity of its bucket.
+     */
+    static int capacity(int count) {
+        int step = Math.max(Integer.highestOneBit(count) / BUCKETS_PER_DOUBLING, 1);
+        long capacity = ((long) count + step - 1) / step * step;
+        return (int) Math.min(capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * retain() keeps pixels idle for reuse, unless that would take the pool
+     * over its maximum size.  The caller must hold the lock.
+     */
+    private void retain(int[] pixels) {
+        long bytes = 4L * pixels.length;
+        if (retainedBytes + bytes > maxRetainedBytes) {
+            return;
+        }
+        ArrayDeque<int[]> bucket = idle.get(pixels.length);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            idle.put(pixels.length, bucket);
+        }
+        bucket.push(pixels);
+        retainedBytes += bytes;
+    }
+
+    /**
+     * reclaimLeaks() takes back the arrays of storages that were collected
+     * without being released.  The caller must hold the lock.
+     */
+    private void reclaimLeaks() {
+        Lease lease;
+        while ((lease = (Lease) collected.poll()) != null) {
+            if (leases.remove(lease)) {
+                leaks++;
+                if (lease.site != null) {
+                    System.err.println("A " + lease.pixels.length + "-pixel buffer was never released:");
+                    lease.site.printStackTrace();
+                }
+                retain(lease.pixels);
+            }
+        }
+    }
+
+    /**
+     * getBorrows() returns the number of arrays lent, counting only images of
+     * at least MIN_POOLED_PIXELS.
+     */
+    public synchronized long getBorrows() {
+        return borrows;
+    }
+
+    /**
+     * getHits() returns the number of borrows served by an idle array.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * getHitRate() returns the fraction of borrows served by an idle array
+     * rather than a new one, or 0 if there have been none.
+     */
+    public synchronized double getHitRate() {
+        return borrows == 0 ? 0 : (double) hits / borrows;
+    }
+
+    /**
+     * getOutstanding() returns the number of storages lent and not yet
+     * released or found leaked.
+     */
+    public synchronized int getOutstanding() {
+        reclaimLeaks();
+        return leases.size();
+    }
+
+    /**
+     * getLeaks() returns the number of storages that were collected without
+     * being released.  Leaks are noticed some time after the collection.
+     */
+    public synchronized long getLeaks() {
+        reclaimLeaks();
+        return leaks;
+    }
+
+    /**
+     * getRetainedBytes() returns the size of the idle arrays in the pool.
+     */
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * clear() drops every idle array, leaving the counts alone.
+     */
+    public synchronized void clear() {
+        idle.clear();
+        retainedBytes = 0;
+    }
+
+    /**
+     * toString() summarizes the use of the pool in one line.
+     */
+    @Override
+    public synchronized String toString() {
+        reclaimLeaks();
+        return String.format(Locale.ROOT,
+                "Buffer pool: %d borrowed, %.1f%% reused, %d released, %d leaked, %d out, %.1f MB idle",
+                borrows, 100 * getHitRate(), releases, leaks, leases.size(), retainedBytes / 1048576.0);
+    }
+
+    /**
+     * A Lease ties a borrowed array to the storage it was lent to.  It is
+     * enqueued when the storage is collected, and cleared when it is
+     * released.
+     */
+    static final class Lease extends WeakReference<PackedIntStorage> {
+
+        private final BufferPool pool;
+        private final int[] pixels;
+        private final Throwable site;
+
+        private Lease(BufferPool pool, PackedIntStorage storage, int[] pixels, Throwable site) {
+            super(storage, pool.collected);
+            this.pool = pool;
+            this.pixels = pixels;
+            this.site = site;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A Convolution applies a Kernel to every pixel of an image, treating the
+ * red, green and blue channels separately.
+ * <p/>
+ * The image is processed a row at a time.  Each source row is read once,
+ * padded at its ends according to the BorderMode, and kept in a ring of
+ * kernel-height rows.  Separable kernels are run as a horizontal pass over
+ * each incoming row followed by a vertical pass down the ring, so a w x h
+ * kernel costs w + h multiplies per pixel rather than w * h.  Taps with
+ * a zero weight are skipped.
+ * <p/>
+ * filter() clamps the results into 0...255 and writes an image.
+ */
+public class Convolution {
+
+    private final Kernel kernel;
+    private final BorderMode border;
+    private final TiledExecutor executor;
+
+    public Convolution(Kernel kernel, BorderMode border) {
+        this(kernel, border, TiledExecutor.getDefault());
+    }
+
+    public Convolution(Kernel kernel, BorderMode border, TiledExecutor executor) {
+        this.kernel = kernel;
+        this.border = border;
+        this.executor = executor;
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public BorderMode getBorder() {
+        return border;
+    }
+
+    /**
+     * filter() convolves src with the kernel and returns the result, clamped
+     * into 0...255, as a new storage with the same layout as src.
+     */
+    public PixelStorage filter(PixelStorage src) {
+        PixelStorage dst = src.createBlank(src.getWidth(), src.getHeight());
+        filter(src, dst);
+        return dst;
+    }
+
+    /**
+     * filter() convolves src with the kernel and writes the result, clamped
+     * into 0...255, into dst.  The rows are processed in parallel bands.
+     * src and dst must be different storages of the same size.
+     */
+    public void filter(final PixelStorage src, final PixelStorage dst) {
+        final int width = src.getWidth();
+        executor.forEachBand(src.getHeight(), new TiledExecutor.BandTask() {
+            @Override
+            public void run(int band, int y0, int y1) {
+                Pass pass = new Pass(src);
+                int[] red = new int[width];
+                int[] green = new int[width];
+                int[] blue = new int[width];
+                int[] row = new int[width];
+                pass.start(y0);
+                for (int y = y0; y < y1; y++) {
+                    pass.nextRow(red, green, blue, 0);
+                    for (int x = 0; x < width; x++) {
+                        row[x] = Pixel.pack(clamp(red[x]), clamp(green[x]), clamp(blue[x]));
+                    }
+                    dst.setRGB(y * width, row, 0, width);
+                }
+            }
+        });
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    /**
+     * A Pass produces consecutive output rows of the convolution.  It keeps
+     * the last kernel-height source rows (or, for separable kernels, their
+     * horizontal sums) in a ring indexed by virtual row number, where virtual
+     * rows outside the image are resolved by the BorderMode.
+     */
+    private class Pass {
+
+        private final PixelStorage src;
+        private final int width;
+        private final int height;
+        private final int radiusX;
+        private final int radiusY;
+        private final boolean separable;
+
+        // columns[x + radiusX] is the column that stands in for column x, or
+        // -1 for black.
+        private final int[] columns;
+
+        private final int[] row;
+        // One padded source row, planar: channel c at c * paddedWidth.
+        private final int[] padded;
+
+        // Ring of kernel-height rows.  For separable kernels each entry holds
+        // horizontal sums (3 * width); otherwise a padded source row.
+        private final int[][] intRing;
+        private final float[][] floatRing;
+        private final int[] ringRows;
+
+        private final float[] totals;
+
+        private int y;
+
+        Pass(PixelStorage src) {
+            this.src = src;
+            width = src.getWidth();
+            height = src.getHeight();
+            radiusX = kernel.getRadiusX();
+            radiusY = kernel.getRadiusY();
+            separable = kernel.isSeparable();
+
+            int paddedWidth = width + 2 * radiusX;
+            columns = new int[paddedWidth];
+            for (int i = 0; i < paddedWidth; i++) {
+                columns[i] = border.map(i - radiusX, width);
+            }
+
+            row = new int[width];
+            padded = new int[3 * paddedWidth];
+
+            int ringWidth = separable ? 3 * width : 3 * paddedWidth;
+            if (kernel.isIntegral() || !separable) {
+                intRing = new int[kernel.getHeight()][ringWidth];
+                floatRing = null;
+            } else {
+                intRing = null;
+                floatRing = new float[kernel.getHeight()][ringWidth];
+            }
+            ringRows = new int[kernel.getHeight()];
+            totals = new float[width];
+        }
+
+        void start(int y0) {
+            y = y0;
+            Arrays.fill(ringRows, Integer.MIN_VALUE);
+        }
+
+        /**
+         * nextRow() computes the next output row and stores it at offset in
+         * each of the channel arrays.
+         */
+        void nextRow(int[] red, int[] green, int[] blue, int offset) {
+            int kernelHeight = kernel.getHeight();
+            for (int j = 0; j < kernelHeight; j++) {
+                load(y + j - radiusY);
+            }
+
+            if (separable && kernel.isIntegral()) {
+                verticalInt(red, green, blue, offset);
+            } else if (separable) {
+                verticalFloat(red, green, blue, offset);
+            } else {
+                direct(red, green, blue, offset);
+            }
+            y++;
+        }
+
+        private int slot(int virtualRow) {
+            return Math.floorMod(virtualRow, kernel.getHeight());
+        }
+
+        /**
+         * load() makes sure the ring holds the given virtual row.
+         */
+        private void load(int virtualRow) {
+            int slot = slot(virtualRow);
+            if (ringRows[slot] == virtualRow) {
+                return;
+            }
+            ringRows[slot] = virtualRow;
+
+            int paddedWidth = width + 2 * radiusX;
+            int sourceRow = border.map(virtualRow, height);
+            if (sourceRow < 0) {
+                Arrays.fill(padded, 0);
+            } else {
+                src.getRGB(sourceRow * width, row, 0, width);
+                for (int i = 0; i < paddedWidth; i++) {
+                    int column = columns[i];
+                    if (column < 0) {
+                        padded[i] = 0;
+                        padded[paddedWidth + i] = 0;
+                        padded[2 * paddedWidth + i] = 0;
+                    } else {
+                        int pixel = row[column];
+                        padded[i] = Pixel.red(pixel);
+                        padded[paddedWidth + i] = Pixel.green(pixel);
+                        padded[2 * paddedWidth + i] = Pixel.blue(pixel);
+                    }
+                }
+            }
+
+            if (!separable) {
+                System.arraycopy(padded, 0, intRing[slot], 0, padded.length);
+            } else if (kernel.isIntegral()) {
+                horizontalInt(intRing[slot]);
+            } else {
+                horizontalFloat(floatRing[slot]);
+            }
+        }
+
+        private void horizontalInt(int[] sums) {
+            int[] taps = kernel.intHorizontal();
+            int paddedWidth = width + 2 * radiusX;
+            for (int c = 0; c < 3; c++) {
+                int in = c * paddedWidth;
+                int out = c * width;
+                Arrays.fill(sums, out, out + width, 0);
+                for (int i = 0; i < taps.length; i++) {
+                    int weight = taps[i];
+                    if (weight == 0) {
+                        continue;
+                    }
+                    for (int x = 0; x < width; x++) {
+                        sums[out + x] += weight * padded[in + x + i];
+                    }
+                }
+            }
+        }
+
+        private void horizontalFloat(float[] sums) {
+            float[] taps = kernel.floatHorizontal();
+            int paddedWidth = width + 2 * radiusX;
+            for (int c = 0; c < 3; c++) {
+                int in = c * paddedWidth;
+                int out = c * width;
+                Arrays.fill(sums, out, out + width, 0f);
+                for (int i = 0; i < taps.length; i++) {
+                    float weight = taps[i];
+                    if (weight == 0) {
+                        continue;
+                    }
+                    for (int x = 0; x < width; x++) {
+                        sums[out + x] += weight * padded[in + x + i];
+                    }
+                }
+            }
+        }
+
+        private void verticalInt(int[] red, int[] green, int[] blue, int offset) {
+            int[] taps = kernel.intVertical();
+            int[][] channels = {red, green, blue};
+            for (int c = 0; c < 3; c++) {
+                int[] out = channels[c];
+                Arrays.fill(out, offset, offset + width, 0);
+                for (int j = 0; j < taps.length; j++) {
+                    int weight = taps[j];
+                    if (weight == 0) {
+                        continue;
+                    }
+                    int[] sums = intRing[slot(y + j - radiusY)];
+                    for (int x = 0; x < width; x++) {
+                        out[offset + x] += weight * sums[c * width + x];
+                    }
+                }
+                scale(out, offset);
+            }
+        }
+
+        private void verticalFloat(int[] red, int[] green, int[] blue, int offset) {
+            float[] taps = kernel.floatVertical();
+            int[][] channels = {red, green, blue};
+            for (int c = 0; c < 3; c++) {
+                Arrays.fill(totals, 0f);
+                for (int j = 0; j < taps.length; j++) {
+                    float weight = taps[j];
+                    if (weight == 0) {
+                        continue;
+                    }
+                    float[] sums = floatRing[slot(y + j - radiusY)];
+                    for (int x = 0; x < width; x++) {
+                        totals[x] += weight * sums[c * width + x];
+                    }
+                }
+                int[] out = channels[c];
+                for (int x = 0; x < width; x++) {
+                    out[offset + x] = Math.round(totals[x]);
+                }
+            }
+        }
+
+        private void direct(int[] red, int[] green, int[] blue, int offset) {
+            int kernelWidth = kernel.getWidth();
+            int kernelHeight = kernel.getHeight();
+            int paddedWidth = width + 2 * radiusX;
+            int[][] channels = {red, green, blue};
+            int[] intWeights = kernel.intWeights();
+            float[] floatWeights = kernel.floatWeights();
+
+            for (int c = 0; c < 3; c++) {
+                int[] out = channels[c];
+                Arrays.fill(out, offset, offset + width, 0);
+                Arrays.fill(totals, 0f);
+                for (int j = 0; j < kernelHeight; j++) {
+                    int[] source = intRing[slot(y + j - radiusY)];
+                    for (int i = 0; i < kernelWidth; i++) {
+                        int in = c * paddedWidth + i;
+                        if (intWeights != null) {
+                            int weight = intWeights[j * kernelWidth + i];
+                            if (weight == 0) {
+                                continue;
+                            }
+                            for (int x = 0; x < width; x++) {
+                                out[offset + x] += weight * source[in + x];
+                            }
+                        } else {
+                            float weight = floatWeights[j * kernelWidth + i];
+                            if (weight == 0) {
+                                continue;
+                            }
+                            for (int x = 0; x < width; x++) {
+                                totals[x] += weight * source[in + x];
+                            }
+                        }
+                    }
+                }
+                if (intWeights == null) {
+                    for (int x = 0; x < width; x++) {
+                        out[offset + x] = Math.round(totals[x]);
+                    }
+                } else {
+                    scale(out, offset);
+                }
+            }
+        }
+
+        /**
+         * scale() removes the fixed-point scaling from one row of int
+         * results, rounding to nearest.
+         */
+        private void scale(int[] out, int offset) {
+            int bits = kernel.getFractionBits();
+            if (bits == 0) {
+                return;
+            }
+            int half = 1 << (bits - 1);
+            for (int x = 0; x < width; x++) {
+                out[offset + x] = (out[offset + x] + half) >> bits;
+            }
+        }
+    }
+}
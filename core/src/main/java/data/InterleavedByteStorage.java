@@ -0,0 +1,91 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * An InterleavedByteStorage keeps the image as one row-major byte array of
+ * red, green, blue triples, the same order an uncompressed RGB TIFF uses.
+ */
+public class InterleavedByteStorage implements PixelStorage {
+
+    private final int width;
+    private final int height;
+
+    private final byte[] samples;
+
+    public InterleavedByteStorage(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        int size = PixelLayout.pixelCount(width, height);
+        if (size > Integer.MAX_VALUE / 3) {
+            throw new IllegalArgumentException("Image too large: " + width + "x" + height);
+        }
+        samples = new byte[3 * size];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getRGB(int index) {
+        int i = 3 * index;
+        return Pixel.pack(samples[i] & 0xFF, samples[i + 1] & 0xFF, samples[i + 2] & 0xFF);
+    }
+
+    @Override
+    public void setRGB(int index, int argb) {
+        int i = 3 * index;
+        samples[i] = (byte) (argb >> 16);
+        samples[i + 1] = (byte) (argb >> 8);
+        samples[i + 2] = (byte) argb;
+    }
+
+    @Override
+    public void getRGB(int index, int[] dst, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[offset + i] = getRGB(index + i);
+        }
+    }
+
+    @Override
+    public void setRGB(int index, int[] src, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setRGB(index + i, src[offset + i]);
+        }
+    }
+
+    @Override
+    public void fill(int from, int to, int argb) {
+        byte red = (byte) (argb >> 16);
+        byte green = (byte) (argb >> 8);
+        byte blue = (byte) argb;
+        if (red == green && green == blue) {
+            // Grayscale fills (the common case for masks) are a single span.
+            Arrays.fill(samples, 3 * from, 3 * to, red);
+            return;
+        }
+        for (int i = 3 * from; i < 3 * to; i += 3) {
+            samples[i] = red;
+            samples[i + 1] = green;
+            samples[i + 2] = blue;
+        }
+    }
+
+    @Override
+    public PixelStorage createBlank(int width, int height) {
+        return new InterleavedByteStorage(width, height);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return samples.length;
+    }
+}
@@ -0,0 +1,302 @@
+package data;
+
+/**
+ * A Kernel is a rectangular grid of convolution weights with odd width and
+ * height, so it has a centre tap.  Weights are indexed the same way as the
+ * short[][] kernels PixelMatrix.convolve() takes: weights[i][j] multiplies
+ * the pixel at (x + i - radiusX, y + j - radiusY).  As there, the kernel is
+ * not flipped.
+ * <p/>
+ * Weights are either ints or floats.  Int weights may be fixed-point: with
+ * fractionBits = f, each weight stands for weight / 2^f, and the sum of
+ * products is divided by 2^f (rounding to nearest) at the end.  With f = 0
+ * the sums are exact, which is what gradient operators like Sobel need.
+ * <p/>
+ * When the kernel is constructed we check whether it is the outer product of
+ * a column and a row vector.  If it is, Convolution runs it as two 1-D passes
+ * that cost width + height multiplies per pixel instead of width * height.
+ * For int kernels we only accept an integer factorisation, so the two-pass
+ * result is exactly the same as the direct one.
+ */
+public class Kernel {
+
+    private final int width;
+    private final int height;
+
+    private final int fractionBits;
+
+    // Row-major: the weight for offset (i, j) is at j * width + i.  Exactly
+    // one of these is non-null.
+    private final int[] intWeights;
+    private final float[] floatWeights;
+
+    // The separable factors, or null if the kernel is not separable.  The
+    // weight at (i, j) is horizontal[i] * vertical[j].
+    private int[] intHorizontal;
+    private int[] intVertical;
+    private float[] floatHorizontal;
+    private float[] floatVertical;
+
+    private Kernel(int width, int height, int[] intWeights, float[] floatWeights, int fractionBits) {
+        if (width % 2 == 0 || height % 2 == 0) {
+            throw new IllegalArgumentException("Kernel size must be odd: " + width + "x" + height);
+        }
+        if (fractionBits < 0 || fractionBits > 30) {
+            throw new IllegalArgumentException("Bad number of fraction bits: " + fractionBits);
+        }
+        this.width = width;
+        this.height = height;
+        this.intWeights = intWeights;
+        this.floatWeights = floatWeights;
+        this.fractionBits = fractionBits;
+
+        if (intWeights != null) {
+            factorInts();
+        } else {
+            factorFloats();
+        }
+    }
+
+    /**
+     * ofInts() returns a kernel with exact integer weights.
+     *
+     * @param weights the weights, indexed [x offset][y offset].
+     */
+    public static Kernel ofInts(int[][] weights) {
+        return ofFixedPoint(weights, 0);
+    }
+
+    /**
+     * ofFixedPoint() returns a kernel whose weights are weights[i][j] / 2^fractionBits.
+     *
+     * @param weights      the scaled weights, indexed [x offset][y offset].
+     * @param fractionBits the number of fractional bits in each weight.
+     */
+    public static Kernel ofFixedPoint(int[][] weights, int fractionBits) {
+        int width = weights.length;
+        int height = weights[0].length;
+        int[] flat = new int[width * height];
+        for (int i = 0; i < width; i++) {
+            if (weights[i].length != height) {
+                throw new IllegalArgumentException("Kernel is not rectangular");
+            }
+            for (int j = 0; j < height; j++) {
+                flat[j * width + i] = weights[i][j];
+            }
+        }
+        return new Kernel(width, height, flat, null, fractionBits);
+    }
+
+    /**
+     * ofFloats() returns a kernel with floating-point weights.  Results are
+     * rounded to the nearest integer.
+     *
+     * @param weights the weights, indexed [x offset][y offset].
+     */
+    public static Kernel ofFloats(float[][] weights) {
+        int width = weights.length;
+        int height = weights[0].length;
+        float[] flat = new float[width * height];
+        for (int i = 0; i < width; i++) {
+            if (weights[i].length != height) {
+                throw new IllegalArgumentException("Kernel is not rectangular");
+            }
+            for (int j = 0; j < height; j++) {
+                flat[j * width + i] = weights[i][j];
+            }
+        }
+        return new Kernel(width, height, null, flat, 0);
+    }
+
+    /**
+     * gaussian() returns a normalised (2 * radius + 1)-square Gaussian kernel
+     * with the given standard deviation.
+     */
+    public static Kernel gaussian(int radius, double sigma) {
+        int size = 2 * radius + 1;
+        double[] taps = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            double d = i - radius;
+            taps[i] = Math.exp(-d * d / (2 * sigma * sigma));
+            total += taps[i];
+        }
+        float[][] weights = new float[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                weights[i][j] = (float) (taps[i] * taps[j] / (total * total));
+            }
+        }
+        return ofFloats(weights);
+    }
+
+    /**
+     * factorInts() looks for integer vectors h and v with weight(i, j) ==
+     * h[i] * v[j].
+     */
+    private void factorInts() {
+        int pivot = -1;
+        for (int k = 0; k < intWeights.length; k++) {
+            if (intWeights[k] != 0) {
+                pivot = k;
+                break;
+            }
+        }
+        if (pivot < 0) {
+            // All zero; trivially separable.
+            intHorizontal = new int[width];
+            intVertical = new int[height];
+            return;
+        }
+        int pi = pivot % width;
+        int pj = pivot / width;
+        int p = intWeights[pivot];
+
+        // Take the pivot row, divided by its gcd, as h; then v[j] =
+        // weight(pi, j) * g / p must be an integer.
+        int g = 0;
+        for (int i = 0; i < width; i++) {
+            g = gcd(g, Math.abs(intWeights[pj * width + i]));
+        }
+        int[] horizontal = new int[width];
+        for (int i = 0; i < width; i++) {
+            horizontal[i] = intWeights[pj * width + i] / g;
+        }
+        int[] vertical = new int[height];
+        for (int j = 0; j < height; j++) {
+            long scaled = (long) intWeights[j * width + pi] * g;
+            if (scaled % p != 0) {
+                return;
+            }
+            vertical[j] = (int) (scaled / p);
+        }
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                if ((long) horizontal[i] * vertical[j] != intWeights[j * width + i]) {
+                    return;
+                }
+            }
+        }
+        intHorizontal = horizontal;
+        intVertical = vertical;
+    }
+
+    /**
+     * factorFloats() looks for vectors h and v with weight(i, j) == h[i] *
+     * v[j], up to float rounding.
+     */
+    private void factorFloats() {
+        int pivot = 0;
+        for (int k = 1; k < floatWeights.length; k++) {
+            if (Math.abs(floatWeights[k]) > Math.abs(floatWeights[pivot])) {
+                pivot = k;
+            }
+        }
+        float largest = Math.abs(floatWeights[pivot]);
+        if (largest == 0) {
+            floatHorizontal = new float[width];
+            floatVertical = new float[height];
+            return;
+        }
+        int pi = pivot % width;
+        int pj = pivot / width;
+
+        float[] horizontal = new float[width];
+        for (int i = 0; i < width; i++) {
+            horizontal[i] = floatWeights[pj * width + i];
+        }
+        float[] vertical = new float[height];
+        for (int j = 0; j < height; j++) {
+            vertical[j] = floatWeights[j * width + pi] / floatWeights[pivot];
+        }
+        float tolerance = largest * 1e-5f;
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                if (Math.abs(horizontal[i] * vertical[j] - floatWeights[j * width + i]) > tolerance) {
+                    return;
+                }
+            }
+        }
+        floatHorizontal = horizontal;
+        floatVertical = vertical;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRadiusX() {
+        return width / 2;
+    }
+
+    public int getRadiusY() {
+        return height / 2;
+    }
+
+    /**
+     * isIntegral() returns true if the weights are (fixed-point) ints.
+     */
+    public boolean isIntegral() {
+        return intWeights != null;
+    }
+
+    public int getFractionBits() {
+        return fractionBits;
+    }
+
+    /**
+     * isSeparable() returns true if Convolution can run this kernel as two
+     * 1-D passes.
+     */
+    public boolean isSeparable() {
+        return intHorizontal != null || floatHorizontal != null;
+    }
+
+    /**
+     * weight() returns the weight applied to the pixel at offset (i - radiusX,
+     * j - radiusY), with any fixed-point scaling removed.
+     */
+    public double weight(int i, int j) {
+        if (intWeights != null) {
+            return intWeights[j * width + i] / (double) (1 << fractionBits);
+        }
+        return floatWeights[j * width + i];
+    }
+
+    int[] intWeights() {
+        return intWeights;
+    }
+
+    float[] floatWeights() {
+        return floatWeights;
+    }
+
+    int[] intHorizontal() {
+        return intHorizontal;
+    }
+
+    int[] intVertical() {
+        return intVertical;
+    }
+
+    float[] floatHorizontal() {
+        return floatHorizontal;
+    }
+
+    float[] floatVertical() {
+        return floatVertical;
+    }
+}
@@ -0,0 +1,191 @@
+package data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A MappedStorage keeps each pixel as one packed int in a memory-mapped
+ * file instead of on the heap, so an image can be larger than the Java heap
+ * and the operating system's page cache decides what stays resident.
+ * <p/>
+ * The file is mapped in segments of SEGMENT_PIXELS pixels (1GB), because one
+ * MappedByteBuffer cannot exceed 2GB.  A fresh file is all zeros, which
+ * reads back as black.
+ * <p/>
+ * Storages made by the MappedStorage(int, int) constructor or by
+ * createBlank() live in temporary files in the directory named by the
+ * pix.mapDir system property (java.io.tmpdir by default).  The files are
+ * removed as soon as they are mapped, so nothing is left behind; the space
+ * is reclaimed when the mappings are garbage collected.
+ */
+public class MappedStorage implements PixelStorage {
+
+    public static final String MAP_DIR_PROPERTY = "pix.mapDir";
+
+    static final int SEGMENT_SHIFT = 28;
+    public static final int SEGMENT_PIXELS = 1 << SEGMENT_SHIFT;
+
+    // Runs at least this long are filled by bulk copies.
+    private static final int FILL_CHUNK = 1024;
+
+    private final int width;
+    private final int height;
+    private final int size;
+
+    private final IntBuffer[] segments;
+
+    /**
+     * MappedStorage() constructs an all-black storage backed by a temporary
+     * file.
+     */
+    public MappedStorage(int width, int height) {
+        this(width, height, null);
+    }
+
+    /**
+     * MappedStorage() maps file as a width x height image, creating the file
+     * or growing it if it is too short.  Pixels already in the file are kept,
+     * so an image can be reopened later.
+     *
+     * @param file   the file to map, or null for a temporary file.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     */
+    public MappedStorage(int width, int height, Path file) {
+        this.width = width;
+        this.height = height;
+        size = PixelLayout.pixelCount(width, height);
+
+        segments = new IntBuffer[(int) (((long) size + SEGMENT_PIXELS - 1) >> SEGMENT_SHIFT)];
+        try {
+            boolean temporary = file == null;
+            if (temporary) {
+                String directory = System.getProperty(MAP_DIR_PROPERTY, System.getProperty("java.io.tmpdir"));
+                file = Files.createTempFile(Paths.get(directory), "pix", ".raw");
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                for (int s = 0; s < segments.length; s++) {
+                    long start = (long) s << SEGMENT_SHIFT;
+                    long pixels = Math.min(SEGMENT_PIXELS, size - start);
+                    segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, 4 * start, 4 * pixels)
+                            .order(ByteOrder.nativeOrder()).asIntBuffer();
+                }
+            } finally {
+                if (temporary) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map " + width + "x" + height + " image", e);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getRGB(int index) {
+        return segments[index >>> SEGMENT_SHIFT].get(index & (SEGMENT_PIXELS - 1)) | Pixel.OPAQUE;
+    }
+
+    @Override
+    public void setRGB(int index, int argb) {
+        segments[index >>> SEGMENT_SHIFT].put(index & (SEGMENT_PIXELS - 1), argb);
+    }
+
+    @Override
+    public void getRGB(int index, int[] dst, int offset, int length) {
+        while (length > 0) {
+            // Each piece stays within one segment.  Duplicates keep the bulk
+            // copies safe to run from several threads.
+            IntBuffer segment = segments[index >>> SEGMENT_SHIFT].duplicate();
+            int position = index & (SEGMENT_PIXELS - 1);
+            int piece = Math.min(length, SEGMENT_PIXELS - position);
+            segment.position(position);
+            segment.get(dst, offset, piece);
+            for (int i = offset; i < offset + piece; i++) {
+                dst[i] |= Pixel.OPAQUE;
+            }
+            index += piece;
+            offset += piece;
+            length -= piece;
+        }
+    }
+
+    @Override
+    public void setRGB(int index, int[] src, int offset, int length) {
+        while (length > 0) {
+            IntBuffer segment = segments[index >>> SEGMENT_SHIFT].duplicate();
+            int position = index & (SEGMENT_PIXELS - 1);
+            int piece = Math.min(length, SEGMENT_PIXELS - position);
+            segment.position(position);
+            segment.put(src, offset, piece);
+            index += piece;
+            offset += piece;
+            length -= piece;
+        }
+    }
+
+    /**
+     * fill() writes each segment's share of the pixels in one go: short
+     * pieces a pixel at a time, and long ones by bulk copies of a chunk of
+     * the colour, which is allocated only for runs long enough to repay it.
+     */
+    @Override
+    public void fill(int from, int to, int argb) {
+        int[] chunk = null;
+        int index = from;
+        while (index < to) {
+            IntBuffer segment = segments[index >>> SEGMENT_SHIFT];
+            int position = index & (SEGMENT_PIXELS - 1);
+            int piece = Math.min(to - index, SEGMENT_PIXELS - position);
+            if (piece < FILL_CHUNK) {
+                for (int i = position; i < position + piece; i++) {
+                    segment.put(i, argb);
+                }
+            } else {
+                if (chunk == null) {
+                    chunk = new int[FILL_CHUNK];
+                    Arrays.fill(chunk, argb);
+                }
+                // A duplicate, so that bulk fills can run on several threads.
+                segment = segment.duplicate();
+                segment.position(position);
+                for (int left = piece; left > 0; left -= FILL_CHUNK) {
+                    segment.put(chunk, 0, Math.min(left, FILL_CHUNK));
+                }
+            }
+            index += piece;
+        }
+    }
+
+    /**
+     * createBlank() returns a new storage in a temporary mapped file, so
+     * intermediate images stay off the heap too.
+     */
+    @Override
+    public PixelStorage createBlank(int width, int height) {
+        return new MappedStorage(width, height);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return 4L * size;
+    }
+}
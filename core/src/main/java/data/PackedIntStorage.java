@@ -0,0 +1,98 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A PackedIntStorage keeps each pixel as one 0xAARRGGBB int in a single
+ * row-major array.  One borrowed from a BufferPool may have a longer array
+ * than it needs, and loses it when it is released.
+ */
+public class PackedIntStorage implements PixelStorage {
+
+    private final int width;
+    private final int height;
+
+    private int[] pixels;
+    // Set if the array is borrowed from a BufferPool.
+    private BufferPool.Lease lease;
+
+    public PackedIntStorage(int width, int height) {
+        this(width, height, new int[PixelLayout.pixelCount(width, height)]);
+    }
+
+    /**
+     * PackedIntStorage() constructs an all-black storage in the first
+     * width * height ints of pixels, which may be longer.
+     */
+    PackedIntStorage(int width, int height, int[] pixels) {
+        this.width = width;
+        this.height = height;
+
+        this.pixels = pixels;
+        Arrays.fill(pixels, 0, PixelLayout.pixelCount(width, height), Pixel.pack(0, 0, 0));
+    }
+
+    BufferPool.Lease getLease() {
+        return lease;
+    }
+
+    void setLease(BufferPool.Lease lease) {
+        this.lease = lease;
+    }
+
+    /**
+     * detach() forgets the array and the lease, once the array has gone back
+     * to the pool.
+     */
+    void detach() {
+        pixels = null;
+        lease = null;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getRGB(int index) {
+        return pixels[index];
+    }
+
+    @Override
+    public void setRGB(int index, int argb) {
+        pixels[index] = argb | Pixel.OPAQUE;
+    }
+
+    @Override
+    public void getRGB(int index, int[] dst, int offset, int length) {
+        System.arraycopy(pixels, index, dst, offset, length);
+    }
+
+    @Override
+    public void setRGB(int index, int[] src, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            pixels[index + i] = src[offset + i] | Pixel.OPAQUE;
+        }
+    }
+
+    @Override
+    public void fill(int from, int to, int argb) {
+        Arrays.fill(pixels, from, to, argb | Pixel.OPAQUE);
+    }
+
+    @Override
+    public PixelStorage createBlank(int width, int height) {
+        return new PackedIntStorage(width, height);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return 4L * pixels.length;
+    }
+}
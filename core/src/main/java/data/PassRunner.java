@@ -0,0 +1,149 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A PassRunner runs the passes of a separable filter, such as BoxBlur's or
+ * BoxCascade's, over images of one size.  Each pass is split into row bands
+ * by a TiledExecutor and the bands run in parallel.
+ * <p/>
+ * A filter has one or more stages, and each stage has a Pass type holding
+ * the row buffers a band works in.  The runner keeps a pool of Passes for
+ * each stage, enough for all the bands that can run at once, created when
+ * the runner is.  A band takes a Pass from the pool as it starts and gives
+ * it back as it ends, so no buffers are allocated while a filter runs.
+ * <p/>
+ * A PassRunner's pools are thread-safe, but run() uses one scratch image
+ * per call, so the filters that own a runner are safe to use from one
+ * thread at a time.
+ */
+final class PassRunner<P extends PassRunner.Pass> {
+
+    private final int width;
+    private final int height;
+    private final TiledExecutor executor;
+    private final Factory<P> factory;
+
+    // Passes not in use by a band, one queue for each stage.
+    private final List<Queue<P>> passes = new ArrayList<>();
+
+    /**
+     * PassRunner() constructs a runner of the specified number of stages for
+     * images of the specified size, creating the Passes of each stage with
+     * factory.
+     */
+    PassRunner(int width, int height, int stages, TiledExecutor executor, Factory<P> factory) {
+        this.width = width;
+        this.height = height;
+        this.executor = executor;
+        this.factory = factory;
+
+        int concurrentBands = Math.max(Math.min(executor.getParallelism(), executor.bandCount(height)), 1);
+        for (int stage = 0; stage < stages; stage++) {
+            Queue<P> queue = new ConcurrentLinkedQueue<>();
+            for (int i = 0; i < concurrentBands; i++) {
+                queue.add(factory.create(stage));
+            }
+            passes.add(queue);
+        }
+    }
+
+    /**
+     * peek() returns an idle Pass of stage, for work done outside the bands.
+     * It must not be used while a pass of that stage is running.
+     */
+    P peek(int stage) {
+        return passes.get(stage).peek();
+    }
+
+    /**
+     * run() applies numPasses passes to src and leaves the result in dst,
+     * running stage i % stages for pass i.  Passes alternate between dst and
+     * a scratch image, borrowed from the default BufferPool for the call, so
+     * that the last pass lands in dst.  src is not changed.  src and dst
+     * must be different storages of this runner's size.
+     */
+    void run(PixelStorage src, PixelStorage dst, int numPasses) {
+        checkSizes(src, dst);
+
+        BufferPool pool = BufferPool.getDefault();
+        PixelStorage scratch = numPasses > 1 ? pool.createBlank(dst, width, height) : null;
+        try {
+            PixelStorage in = src;
+            for (int i = 0; i < numPasses; i++) {
+                PixelStorage out = (numPasses - 1 - i) % 2 == 0 ? dst : scratch;
+                runPass(i % passes.size(), in, out);
+                in = out;
+            }
+        } finally {
+            if (scratch != null) {
+                pool.release(scratch);
+            }
+        }
+    }
+
+    /**
+     * runPass() applies one pass of stage to src, leaving the result in dst,
+     * with the bands running in parallel.
+     */
+    private void runPass(final int stage, final PixelStorage src, final PixelStorage dst) {
+        final Queue<P> queue = passes.get(stage);
+        executor.forEachBand(height, new TiledExecutor.BandTask() {
+            @Override
+            public void run(int band, int y0, int y1) {
+                P pass = queue.poll();
+                if (pass == null) {
+                    // More bands are running than we planned for.
+                    pass = factory.create(stage);
+                }
+                pass.run(src, dst, y0, y1);
+                queue.add(pass);
+            }
+        });
+    }
+
+    /**
+     * checkSizes() throws an IllegalArgumentException unless src and dst are
+     * different storages of this runner's size.
+     */
+    void checkSizes(PixelStorage src, PixelStorage dst) {
+        checkSize(src, width, height);
+        checkSize(dst, width, height);
+        if (src == dst) {
+            throw new IllegalArgumentException("Cannot filter an image into itself");
+        }
+    }
+
+    /**
+     * checkSize() throws an IllegalArgumentException unless storage is
+     * width x height.
+     */
+    static void checkSize(PixelStorage storage, int width, int height) {
+        if (storage.getWidth() != width || storage.getHeight() != height) {
+            throw new IllegalArgumentException("Expected a " + width + "x" + height + " image, got " +
+                    storage.getWidth() + "x" + storage.getHeight());
+        }
+    }
+
+    /**
+     * A Pass holds the buffers one band of one stage works in.
+     */
+    interface Pass {
+
+        /**
+         * run() filters rows y0...y1 - 1 of src into the same rows of dst.
+         */
+        void run(RowSource src, PixelStorage dst, int y0, int y1);
+    }
+
+    /**
+     * A Factory creates the Passes of each stage of a filter.
+     */
+    interface Factory<P extends Pass> {
+
+        P create(int stage);
+    }
+}
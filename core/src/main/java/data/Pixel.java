@@ -9,6 +9,11 @@ package data;
  */
 public class Pixel {
 
+    /**
+     * OPAQUE is the alpha channel of every packed colour we produce.
+     */
+    public static final int OPAQUE = 0xFF000000;
+
     private short red;
     private short green;
     private short blue;
@@ -39,6 +44,41 @@ public class Pixel {
         return new Pixel();
     }
 
+    /**
+     * fromRGB() builds a Pixel from a packed ARGB colour.
+     */
+    public static Pixel fromRGB(int argb) {
+        return new Pixel(red(argb), green(argb), blue(argb));
+    }
+
+    /**
+     * pack() packs three intensities in the range 0...255 into one opaque
+     * 0xAARRGGBB int, the same format BufferedImage.getRGB() returns.  Only
+     * the low eight bits of each intensity are kept.
+     */
+    public static int pack(int red, int green, int blue) {
+        return OPAQUE | (red & 0xFF) << 16 | (green & 0xFF) << 8 | (blue & 0xFF);
+    }
+
+    public static int red(int argb) {
+        return (argb >> 16) & 0xFF;
+    }
+
+    public static int green(int argb) {
+        return (argb >> 8) & 0xFF;
+    }
+
+    public static int blue(int argb) {
+        return argb & 0xFF;
+    }
+
+    /**
+     * toRGB() returns this Pixel as a packed ARGB colour.
+     */
+    public int toRGB() {
+        return pack(red, green, blue);
+    }
+
     public void setGrayscaleValue(short value) {
         red = value;
         green = value;
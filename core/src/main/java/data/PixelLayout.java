@@ -0,0 +1,58 @@
+package data;
+
+/**
+ * The PixelLayout enum names the ways a PixelMatrix can lay out its samples
+ * in memory.  All of them store rows contiguously, one after another.
+ * <p/>
+ * PACKED_INT keeps one int per pixel (0xAARRGGBB) and is the fastest to read
+ * and write whole pixels.  PLANAR_BYTE keeps a separate byte[] for each of
+ * red, green and blue, and INTERLEAVED_BYTE keeps one byte[] of RGBRGB...
+ * triples, which is also how an uncompressed TIFF strip is laid out.  Both
+ * byte layouts cost three bytes per pixel.  MAPPED_INT keeps packed ints in
+ * a memory-mapped temporary file rather than on the heap, for images that
+ * do not fit in it; see MappedStorage.
+ */
+public enum PixelLayout {
+    PACKED_INT,
+    PLANAR_BYTE,
+    INTERLEAVED_BYTE,
+    MAPPED_INT;
+
+    /**
+     * create() allocates an all-black storage of the specified size in this
+     * layout.
+     *
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return a new PixelStorage.
+     */
+    public PixelStorage create(int width, int height) {
+        switch (this) {
+            case PACKED_INT:
+                return new PackedIntStorage(width, height);
+            case PLANAR_BYTE:
+                return new PlanarByteStorage(width, height);
+            case INTERLEAVED_BYTE:
+                return new InterleavedByteStorage(width, height);
+            case MAPPED_INT:
+                return new MappedStorage(width, height);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * pixelCount() returns width * height, throwing an exception if the image
+     * is too large to index with an int.
+     */
+    static int pixelCount(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Negative image size " + width + "x" + height);
+        }
+        long count = (long) width * height;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image too large: " + width + "x" + height);
+        }
+        return (int) count;
+    }
+}
@@ -0,0 +1,145 @@
+package data;
+
+public class PixelMatrix {
+
+    private PixelStorage storage;
+
+    private int width;
+    private int height;
+
+
+    public PixelMatrix(int width, int height) {
+        this(width, height, PixelLayout.PACKED_INT);
+    }
+
+    public PixelMatrix(int width, int height, PixelLayout layout) {
+        this(layout.create(width, height));
+    }
+
+    public PixelMatrix(PixelStorage storage) {
+        this.storage = storage;
+        this.width = storage.getWidth();
+        this.height = storage.getHeight();
+    }
+
+    /**
+     * getPixel() returns a copy of the pixel at (x, y), or a black pixel if
+     * (x, y) lies outside the matrix.  Changing the returned Pixel does not
+     * change the matrix; use setPixel() for that.
+     */
+    public Pixel getPixel(int x, int y) {
+        if (x >= 0 && x < getWidth() && y >= 0 && y < getHeight()) {
+            return Pixel.fromRGB(storage.getRGB(y * width + x));
+        } else {
+            return Pixel.zeroPixel();
+        }
+    }
+
+    /**
+     * getRGB() returns the packed ARGB colour at (x, y), or opaque black if
+     * (x, y) lies outside the matrix.
+     */
+    public int getRGB(int x, int y) {
+        if (x >= 0 && x < getWidth() && y >= 0 && y < getHeight()) {
+            return storage.getRGB(y * width + x);
+        } else {
+            return Pixel.pack(0, 0, 0);
+        }
+    }
+
+    public short getRed(int x, int y) {
+        return (short) Pixel.red(getRGB(x, y));
+    }
+
+    public short getGreen(int x, int y) {
+        return (short) Pixel.green(getRGB(x, y));
+    }
+
+    public short getBlue(int x, int y) {
+        return (short) Pixel.blue(getRGB(x, y));
+    }
+
+    public Pixel neighborhoodAverage(int x, int y) {
+        int numNeighbors = 0;
+
+        int redSum = 0;
+        int greenSum = 0;
+        int blueSum = 0;
+
+        for (int j = Math.max(y - 1, 0); j < Math.min(y + 2, getHeight()); j++) {
+            for (int i = Math.max(x - 1, 0); i < Math.min(x + 2, getWidth()); i++) {
+                int neighbor = storage.getRGB(j * width + i);
+                redSum += Pixel.red(neighbor);
+                greenSum += Pixel.green(neighbor);
+                blueSum += Pixel.blue(neighbor);
+                numNeighbors++;
+            }
+        }
+
+        return new Pixel(redSum / numNeighbors, greenSum / numNeighbors, blueSum / numNeighbors);
+
+    }
+
+    /**
+     * convolve() applies a kernel of any odd size to the pixel at (x, y),
+     * replicating edge pixels where the kernel hangs off the matrix.  To
+     * filter a whole image, use a Convolution, which is much faster.
+     */
+    public Pixel convolve(int x, int y, short[][] kernel) {
+        int radiusX = kernel.length / 2;
+        int radiusY = kernel[0].length / 2;
+
+        int redTotal = 0;
+        int greenTotal = 0;
+        int blueTotal = 0;
+        for (int i = 0; i < kernel.length; i++) {
+            for (int j = 0; j < kernel[i].length; j++) {
+                // Kernel (i,j) entry is convolved with matrix (x + i - radiusX, y + j - radiusY) entry.
+                int pixel = getRGBReflected(x + i - radiusX, y + j - radiusY);
+                redTotal += kernel[i][j] * Pixel.red(pixel);
+                greenTotal += kernel[i][j] * Pixel.green(pixel);
+                blueTotal += kernel[i][j] * Pixel.blue(pixel);
+            }
+        }
+
+        return new Pixel(redTotal, greenTotal, blueTotal);
+    }
+
+    /**
+     * getRGBReflected() returns the colour at (x, y), replicating the nearest
+     * edge (or corner) pixel for coordinates outside the matrix.
+     */
+    private int getRGBReflected(int x, int y) {
+        int clampedX = Math.min(Math.max(x, 0), getWidth() - 1);
+        int clampedY = Math.min(Math.max(y, 0), getHeight() - 1);
+        return storage.getRGB(clampedY * width + clampedX);
+    }
+
+    public void setPixel(int x, int y, short red, short green, short blue) {
+        if (x >= 0 && x < getWidth() && y >= 0 && y < getHeight()) {
+            storage.setRGB(y * width + x, Pixel.pack(red, green, blue));
+        }
+    }
+
+    public void setRGB(int x, int y, int argb) {
+        if (x >= 0 && x < getWidth() && y >= 0 && y < getHeight()) {
+            storage.setRGB(y * width + x, argb);
+        }
+    }
+
+    /**
+     * getStorage() returns the backing store, for code that wants to read or
+     * write whole rows at once.
+     */
+    public PixelStorage getStorage() {
+        return storage;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
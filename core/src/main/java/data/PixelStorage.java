@@ -0,0 +1,86 @@
+package data;
+
+/**
+ * A PixelStorage is the backing store of a PixelMatrix.  It holds the colour
+ * samples of a width x height image in row-major order, so pixel (x, y) lives
+ * at index y * width + x and a scan over consecutive indices walks along a row.
+ * <p/>
+ * Colours cross this interface as packed ARGB ints (see Pixel.pack()) rather
+ * than as Pixel objects, so whole rows can be moved without allocating
+ * anything.  How the samples are laid out in memory is up to the
+ * implementation; see PixelLayout for the layouts we ship.
+ * <p/>
+ * Every PixelStorage is also a RowSource, so it can be handed straight to
+ * anything that consumes rows.
+ */
+public interface PixelStorage extends RowSource {
+
+    /**
+     * readRow() copies row y into row.  It is the same as getRGB(y * width,
+     * row, 0, width).
+     */
+    @Override
+    default void readRow(int y, int[] row) {
+        getRGB(y * getWidth(), row, 0, getWidth());
+    }
+
+    /**
+     * getRGB() returns the packed ARGB colour of the pixel at the given index.
+     *
+     * @param index the row-major index of the pixel.
+     * @return the packed colour of the pixel.
+     */
+    int getRGB(int index);
+
+    /**
+     * setRGB() stores a packed ARGB colour at the given index.  The alpha
+     * channel is ignored.
+     *
+     * @param index the row-major index of the pixel.
+     * @param argb  the packed colour to store.
+     */
+    void setRGB(int index, int argb);
+
+    /**
+     * getRGB() copies length consecutive pixels, starting at index, into dst
+     * as packed ARGB colours.
+     *
+     * @param index  the row-major index of the first pixel to read.
+     * @param dst    the array to fill.
+     * @param offset the position in dst of the first colour.
+     * @param length the number of pixels to copy.
+     */
+    void getRGB(int index, int[] dst, int offset, int length);
+
+    /**
+     * setRGB() stores length consecutive packed ARGB colours from src,
+     * starting at index.
+     *
+     * @param index  the row-major index of the first pixel to write.
+     * @param src    the colours to store.
+     * @param offset the position in src of the first colour.
+     * @param length the number of pixels to copy.
+     */
+    void setRGB(int index, int[] src, int offset, int length);
+
+    /**
+     * fill() sets every pixel with an index in from...to - 1 to one colour.
+     *
+     * @param from the index of the first pixel to set.
+     * @param to   one past the index of the last pixel to set.
+     * @param argb the packed colour to store.
+     */
+    void fill(int from, int to, int argb);
+
+    /**
+     * createBlank() returns a new, all-black storage of the given size that
+     * uses the same layout as this one.
+     */
+    PixelStorage createBlank(int width, int height);
+
+    /**
+     * sizeInBytes() returns the number of bytes of pixel data held by this
+     * storage, not counting object headers.
+     */
+    long sizeInBytes();
+}
@@ -0,0 +1,80 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A PlanarByteStorage keeps the red, green and blue samples in three separate
+ * row-major byte arrays.
+ */
+public class PlanarByteStorage implements PixelStorage {
+
+    private final int width;
+    private final int height;
+
+    private final byte[] red;
+    private final byte[] green;
+    private final byte[] blue;
+
+    public PlanarByteStorage(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        int size = PixelLayout.pixelCount(width, height);
+        red = new byte[size];
+        green = new byte[size];
+        blue = new byte[size];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getRGB(int index) {
+        return Pixel.pack(red[index] & 0xFF, green[index] & 0xFF, blue[index] & 0xFF);
+    }
+
+    @Override
+    public void setRGB(int index, int argb) {
+        red[index] = (byte) (argb >> 16);
+        green[index] = (byte) (argb >> 8);
+        blue[index] = (byte) argb;
+    }
+
+    @Override
+    public void getRGB(int index, int[] dst, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[offset + i] = getRGB(index + i);
+        }
+    }
+
+    @Override
+    public void setRGB(int index, int[] src, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setRGB(index + i, src[offset + i]);
+        }
+    }
+
+    @Override
+    public void fill(int from, int to, int argb) {
+        Arrays.fill(red, from, to, (byte) (argb >> 16));
+        Arrays.fill(green, from, to, (byte) (argb >> 8));
+        Arrays.fill(blue, from, to, (byte) argb);
+    }
+
+    @Override
+    public PixelStorage createBlank(int width, int height) {
+        return new PlanarByteStorage(width, height);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return 3L * red.length;
+    }
+}
@@ -0,0 +1,29 @@
+package data;
+
+/**
+ * A RowSource supplies an image one row at a time, as packed ARGB colours.
+ * Encoders and writers that only need to see each row once can read from a
+ * RowSource, so an image never has to be held in memory as a whole.
+ * Rows may be read in any order, except from a RowStage, which must be read
+ * top to bottom.
+ */
+public interface RowSource {
+
+    /**
+     * getWidth() returns the number of pixels in each row.
+     */
+    int getWidth();
+
+    /**
+     * getHeight() returns the number of rows.
+     */
+    int getHeight();
+
+    /**
+     * readRow() copies row y into the first getWidth() elements of row.
+     *
+     * @param y   the row to read, in 0...getHeight() - 1.
+     * @param row receives the packed colours of the row.
+     */
+    void readRow(int y, int[] row);
+}
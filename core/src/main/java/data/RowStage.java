@@ -0,0 +1,66 @@
+package data;
+
+/**
+ * A RowStage is one step of a streaming pipeline.  It computes its rows from
+ * the rows of an upstream RowSource, reading each upstream row in order and
+ * keeping only the few rows of context around the current row that its
+ * filter needs.  A chain of stages from an io.TIFFReader to an io.TIFFWriter
+ * therefore processes an image of any height in memory proportional to its
+ * width, and the first strips are written before the last ones are read.
+ * <p/>
+ * Unlike most RowSources, a RowStage must be read in order, top to bottom.
+ * The row read last may be read again, as a downstream filter does where it
+ * replicates the first and last rows past the edges of the image.
+ */
+public abstract class RowStage implements RowSource {
+
+    private final int width;
+    private final int height;
+
+    // The row computed last, and the row computeRow() produces next.
+    private final int[] last;
+    private int next;
+
+    /**
+     * RowStage() constructs a stage that produces height rows of width
+     * pixels.
+     */
+    protected RowStage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        last = new int[width];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * readRow() copies row y into row.  y must be the row after the one read
+     * last, or the same row again.
+     *
+     * @throws IllegalStateException if rows are read out of order.
+     */
+    @Override
+    public final void readRow(int y, int[] row) {
+        if (y == next && y < height) {
+            computeRow(y, last);
+            next++;
+        } else if (y != next - 1) {
+            throw new IllegalStateException("Row " + y + " read out of order; the next row is " + next);
+        }
+        System.arraycopy(last, 0, row, 0, width);
+    }
+
+    /**
+     * computeRow() computes row y of the stage's output into row.  It is
+     * called once for each row, in order.
+     */
+    protected abstract void computeRow(int y, int[] row);
+}
@@ -0,0 +1,549 @@
+package data;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A RunTable stores a run-length encoded sequence of packed colours (one per
+ * pixel, in row-major order) in primitive arrays.
+ * <p/>
+ * The pixels are split into pages of PAGE_SIZE consecutive pixels.  Each page
+ * keeps two parallel arrays: the colour of each of its runs, and the prefix
+ * sum of their lengths (the offset within the page where each run ends).
+ * Because every page covers a fixed span of pixels, the page holding a pixel
+ * is found by division, and the run within the page by binary search over
+ * the prefix sums.  Splitting or merging a run only shifts entries within one
+ * page, so setRGB() costs O(log runs) plus a copy bounded by the page size,
+ * no matter how large the image is.
+ * <p/>
+ * A run that crosses a page boundary is stored as one run in each page.
+ * Cursors join such pieces back together, so callers always see maximal runs:
+ * no two consecutive runs returned by a Cursor have the same colour.
+ * <p/>
+ * Pages can be shared between tables.  snapshot() returns a copy that shares
+ * every page, and withRGB() a copy with one pixel changed that shares every
+ * page but the one holding it, so keeping many versions of a table costs
+ * only the pages in which they differ.  Sharing is copy-on-write: each table
+ * carries an owner token, each page the token of the table that made it,
+ * and a table changes only the pages it made since it last shared them,
+ * copying any other page first.  Pages are grouped GROUP_SIZE to a group,
+ * and groups are shared the same way, so a copy costs one pointer per group
+ * rather than one per page.
+ * <p/>
+ * So a table that is no longer changed never sees its pixels change,
+ * whatever is done to the tables it was copied from or into.  It can be
+ * read by any number of threads without locking, once it has been handed
+ * to them through a volatile field, a concurrent collection or an
+ * executor.  A table being changed must not be read by other threads.
+ */
+public class RunTable {
+
+    public static final int PAGE_SHIFT = 12;
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    public static final int GROUP_SHIFT = 6;
+    public static final int GROUP_SIZE = 1 << GROUP_SHIFT;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final int size;
+    private final int pageCount;
+
+    // Page p is groups[p >> GROUP_SHIFT].pages[p & (GROUP_SIZE - 1)].  The
+    // array itself belongs to this table alone.
+    private final Group[] groups;
+    // Pages and groups made with this token may be changed in place.
+    private Object owner = new Object();
+
+    // The number of pixels appended so far.
+    private int filled;
+
+    /**
+     * RunTable() constructs an empty table for size pixels.  Fill it with
+     * append() before reading it.
+     *
+     * @param size the number of pixels the table will hold.
+     */
+    public RunTable(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size " + size);
+        }
+        this.size = size;
+
+        pageCount = (int) (((long) size + PAGE_SIZE - 1) >> PAGE_SHIFT);
+        groups = new Group[(pageCount + GROUP_SIZE - 1) >> GROUP_SHIFT];
+        for (int g = 0; g < groups.length; g++) {
+            groups[g] = new Group(owner, Math.min(GROUP_SIZE, pageCount - (g << GROUP_SHIFT)));
+            for (int i = 0; i < groups[g].pages.length; i++) {
+                groups[g].pages[i] = new Page(owner);
+            }
+        }
+    }
+
+    /**
+     * RunTable() constructs a copy of table that shares all its pages.  The
+     * caller must give table a new owner, so that neither changes them.
+     */
+    private RunTable(RunTable table) {
+        size = table.size;
+        pageCount = table.pageCount;
+        groups = table.groups.clone();
+        filled = table.filled;
+    }
+
+    /**
+     * snapshot() returns a copy of this table that shares all its pages.  It
+     * takes time proportional to the number of groups, and each table copies
+     * a shared page (or group) only when it first changes it.
+     */
+    public RunTable snapshot() {
+        RunTable copy = new RunTable(this);
+        owner = new Object();
+        return copy;
+    }
+
+    /**
+     * withRGB() returns a copy of this table with the pixel at index changed
+     * to argb, as setRGB() would change it, sharing every page but the one
+     * that holds the pixel.  The pixels of this table are not changed.
+     */
+    public RunTable withRGB(int index, int argb) {
+        RunTable copy = snapshot();
+        copy.setRGB(index, argb);
+        return copy;
+    }
+
+    /**
+     * size() returns the number of pixels in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * isFull() returns true once size pixels have been appended.
+     */
+    public boolean isFull() {
+        return filled == size;
+    }
+
+    /**
+     * append() adds a run of length pixels of one colour after the pixels
+     * already in the table.  A run with the same colour as the one before it
+     * is merged into it.
+     *
+     * @param length the number of pixels in the run.
+     * @param argb   the packed colour of the run.
+     */
+    public void append(int length, int argb) {
+        if (length < 0 || length > size - filled) {
+            throw new IllegalArgumentException("Run of " + length + " does not fit: " +
+                    filled + " of " + size + " pixels filled");
+        }
+        while (length > 0) {
+            int page = filled >> PAGE_SHIFT;
+            int offset = filled & (PAGE_SIZE - 1);
+            int piece = Math.min(length, PAGE_SIZE - offset);
+
+            Page writable = writablePage(page);
+            int count = writable.count;
+            if (count > 0 && writable.colors[count - 1] == argb) {
+                writable.ends[count - 1] += piece;
+            } else {
+                insert(writable, count, offset + piece, argb);
+            }
+
+            filled += piece;
+            length -= piece;
+        }
+    }
+
+    /**
+     * appendRow() appends length packed colours from row, finding runs by
+     * comparing neighbouring colours.  The alpha channel is ignored.
+     */
+    public void appendRow(int[] row, int length) {
+        int x = 0;
+        while (x < length) {
+            int color = row[x] | Pixel.OPAQUE;
+            int end = x + 1;
+            while (end < length && (row[end] | Pixel.OPAQUE) == color) {
+                end++;
+            }
+            // Merges into the last run if it has the same colour
+            append(end - x, color);
+            x = end;
+        }
+    }
+
+    /**
+     * getRGB() returns the colour of the pixel at index.
+     */
+    public int getRGB(int index) {
+        Page page = page(index >> PAGE_SHIFT);
+        return page.colors[find(page, index & (PAGE_SIZE - 1))];
+    }
+
+    /**
+     * setRGB() changes the colour of the pixel at index, splitting the run
+     * that holds it and merging with its neighbours as needed.
+     */
+    public void setRGB(int index, int argb) {
+        if (index < 0 || index >= filled) {
+            throw new IndexOutOfBoundsException("Pixel " + index + " of " + filled);
+        }
+        int offset = index & (PAGE_SIZE - 1);
+        Page page = page(index >> PAGE_SHIFT);
+        int k = find(page, offset);
+        if (page.colors[k] == argb) {
+            return;
+        }
+        if (page.owner != owner) {
+            page = writablePage(index >> PAGE_SHIFT);
+        }
+        int[] pageEnds = page.ends;
+        int[] pageColors = page.colors;
+
+        int count = page.count;
+        int start = k == 0 ? 0 : pageEnds[k - 1];
+        int end = pageEnds[k];
+        boolean joinsPrevious = k > 0 && pageColors[k - 1] == argb;
+        boolean joinsNext = k < count - 1 && pageColors[k + 1] == argb;
+
+        if (end - start == 1) {
+            // Recolour the whole run, then absorb equal neighbours.
+            pageColors[k] = argb;
+            if (joinsNext) {
+                remove(page, k);
+            }
+            if (joinsPrevious) {
+                remove(page, k - 1);
+            }
+        } else if (offset == start) {
+            if (joinsPrevious) {
+                pageEnds[k - 1]++;
+            } else {
+                insert(page, k, start + 1, argb);
+            }
+        } else if (offset == end - 1) {
+            if (joinsNext) {
+                pageEnds[k]--;
+            } else {
+                pageEnds[k]--;
+                insert(page, k + 1, end, argb);
+            }
+        } else {
+            // Split the run in three around the new pixel.
+            int oldColor = pageColors[k];
+            pageEnds[k] = offset;
+            insert(page, k + 1, offset + 1, argb);
+            insert(page, k + 2, end, oldColor);
+        }
+    }
+
+    /**
+     * find() returns the index within page of the run holding the pixel at
+     * offset, by binary search over the run ends.
+     */
+    private static int find(Page page, int offset) {
+        int[] pageEnds = page.ends;
+        int low = 0;
+        int high = page.count - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (pageEnds[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void insert(Page page, int k, int end, int argb) {
+        int count = page.count;
+        if (count == page.ends.length) {
+            int capacity = Math.min(2 * count, PAGE_SIZE);
+            page.ends = Arrays.copyOf(page.ends, capacity);
+            page.colors = Arrays.copyOf(page.colors, capacity);
+        }
+        System.arraycopy(page.ends, k, page.ends, k + 1, count - k);
+        System.arraycopy(page.colors, k, page.colors, k + 1, count - k);
+        page.ends[k] = end;
+        page.colors[k] = argb;
+        page.count = count + 1;
+    }
+
+    /**
+     * remove() deletes run k of page, giving its pixels to run k + 1.
+     */
+    private static void remove(Page page, int k) {
+        int count = page.count;
+        System.arraycopy(page.ends, k + 1, page.ends, k, count - k - 1);
+        System.arraycopy(page.colors, k + 1, page.colors, k, count - k - 1);
+        page.count = count - 1;
+    }
+
+    /**
+     * page() returns page p, for reading.
+     */
+    private Page page(int p) {
+        return groups[p >> GROUP_SHIFT].pages[p & (GROUP_SIZE - 1)];
+    }
+
+    /**
+     * writablePage() returns page p, for changing, first copying it and its
+     * group if this table does not own them.  A page this table owns is
+     * always in a group it owns.
+     */
+    private Page writablePage(int p) {
+        int g = p >> GROUP_SHIFT;
+        Group group = groups[g];
+        if (group.owner != owner) {
+            group = new Group(owner, group);
+            groups[g] = group;
+        }
+        Page page = group.pages[p & (GROUP_SIZE - 1)];
+        if (page.owner != owner) {
+            page = new Page(owner, page);
+            group.pages[p & (GROUP_SIZE - 1)] = page;
+        }
+        return page;
+    }
+
+    /**
+     * copyTo() writes every pixel of the table into dst, a whole run at a
+     * time.  Each page starts at a fixed pixel offset, so the pages are
+     * decoded in parallel bands on executor with no need to find where a
+     * band's first run begins.
+     *
+     * @param dst      the storage to fill; it must hold size() pixels.
+     * @param executor runs the bands of pages.
+     */
+    public void copyTo(final PixelStorage dst, TiledExecutor executor) {
+        if ((long) dst.getWidth() * dst.getHeight() != size) {
+            throw new IllegalArgumentException("Storage holds " + dst.getWidth() + "x" +
+                    dst.getHeight() + " pixels, not " + size);
+        }
+        if (!isFull()) {
+            throw new IllegalStateException("Only " + filled + " of " + size + " pixels appended");
+        }
+        executor.forEachBand(pageCount, new TiledExecutor.BandTask() {
+            @Override
+            public void run(int band, int firstPage, int lastPage) {
+                for (int p = firstPage; p < lastPage; p++) {
+                    Page page = page(p);
+                    int base = p << PAGE_SHIFT;
+                    int start = base;
+                    for (int k = 0; k < page.count; k++) {
+                        int end = base + page.ends[k];
+                        dst.fill(start, end, page.colors[k]);
+                        start = end;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * map() returns a new table in which every run's colour c is replaced by
+     * function.applyAsInt(c).  Runs that end up the same colour are merged.
+     * The cost depends on the number of runs, not the number of pixels.
+     */
+    public RunTable map(IntUnaryOperator function) {
+        RunTable out = new RunTable(size);
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            out.append(cursor.getLength(), function.applyAsInt(cursor.getRGB()));
+        }
+        return out;
+    }
+
+    /**
+     * slice() returns a new table holding pixels from...to - 1 of this one.
+     */
+    public RunTable slice(int from, int to) {
+        if (from < 0 || to > filled || from > to) {
+            throw new IndexOutOfBoundsException("Slice " + from + "..." + to + " of " + filled);
+        }
+        RunTable out = new RunTable(to - from);
+        Cursor cursor = cursor();
+        while (cursor.next() && cursor.getStart() < to) {
+            int start = Math.max(cursor.getStart(), from);
+            int end = Math.min(cursor.getStart() + cursor.getLength(), to);
+            if (start < end) {
+                out.append(end - start, cursor.getRGB());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * flipRows() treats the table as rows of width pixels and returns a new
+     * table with each row reversed.  Runs that span rows are cut at the row
+     * ends, so the cost is proportional to the number of runs plus the
+     * number of rows.
+     */
+    public RunTable flipRows(int width) {
+        if (width <= 0 || filled % width != 0) {
+            throw new IllegalArgumentException("Table of " + filled + " pixels has no rows of " + width);
+        }
+        RunTable out = new RunTable(size);
+        // The pieces of runs that fall in the current row.
+        int[] lengths = new int[INITIAL_CAPACITY];
+        int[] pieceColors = new int[INITIAL_CAPACITY];
+
+        Cursor cursor = cursor();
+        cursor.next();
+        int used = 0;
+        for (int rowStart = 0; rowStart < filled; rowStart += width) {
+            int pieces = 0;
+            int x = 0;
+            while (x < width) {
+                int length = Math.min(cursor.getLength() - used, width - x);
+                if (pieces == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, 2 * pieces);
+                    pieceColors = Arrays.copyOf(pieceColors, 2 * pieces);
+                }
+                lengths[pieces] = length;
+                pieceColors[pieces] = cursor.getRGB();
+                pieces++;
+
+                x += length;
+                used += length;
+                if (used == cursor.getLength()) {
+                    cursor.next();
+                    used = 0;
+                }
+            }
+            for (int i = pieces - 1; i >= 0; i--) {
+                out.append(lengths[i], pieceColors[i]);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * runCount() returns the number of maximal runs, counting a run that
+     * crosses page boundaries once.
+     */
+    public int runCount() {
+        int count = 0;
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * cursor() returns a new Cursor positioned before the first run.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A Page holds the runs of PAGE_SIZE consecutive pixels: count runs, of
+     * which run k ends at offset ends[k] within the page and has colour
+     * colors[k].  Only a table holding its owner token may change it.
+     */
+    private static final class Page {
+
+        private final Object owner;
+        private int count;
+        private int[] ends;
+        private int[] colors;
+
+        Page(Object owner) {
+            this.owner = owner;
+            ends = new int[INITIAL_CAPACITY];
+            colors = new int[INITIAL_CAPACITY];
+        }
+
+        Page(Object owner, Page page) {
+            this.owner = owner;
+            count = page.count;
+            ends = Arrays.copyOf(page.ends, Math.max(count, INITIAL_CAPACITY));
+            colors = Arrays.copyOf(page.colors, Math.max(count, INITIAL_CAPACITY));
+        }
+    }
+
+    /**
+     * A Group holds up to GROUP_SIZE consecutive pages.  Only a table holding
+     * its owner token may change it.
+     */
+    private static final class Group {
+
+        private final Object owner;
+        private final Page[] pages;
+
+        Group(Object owner, int pageCount) {
+            this.owner = owner;
+            pages = new Page[pageCount];
+        }
+
+        Group(Object owner, Group group) {
+            this.owner = owner;
+            pages = group.pages.clone();
+        }
+    }
+
+    /**
+     * A Cursor walks the maximal runs of a RunTable in order without
+     * allocating.  Call next() to advance to each run, then read it with
+     * getStart(), getLength() and getRGB().  A Cursor is not guaranteed to
+     * work if the table is modified after the Cursor is constructed; take a
+     * snapshot() to walk a table that is being changed.
+     */
+    public class Cursor {
+
+        private int page;
+        private int k;
+
+        private int start;
+        private int length;
+        private int color;
+
+        /**
+         * next() advances to the next run and returns true, or returns false
+         * if there are no more runs.
+         */
+        public boolean next() {
+            start += length;
+            length = 0;
+            while (page < pageCount && start + length < filled) {
+                Page current = page(page);
+                if (k >= current.count) {
+                    page++;
+                    k = 0;
+                    continue;
+                }
+                int runStart = k == 0 ? 0 : current.ends[k - 1];
+                int runColor = current.colors[k];
+                if (length > 0 && runColor != color) {
+                    break;
+                }
+                color = runColor;
+                length += current.ends[k] - runStart;
+                k++;
+            }
+            return length > 0;
+        }
+
+        /**
+         * getStart() returns the index of the first pixel of the current run.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getRGB() {
+            return color;
+        }
+    }
+}
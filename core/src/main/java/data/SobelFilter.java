@@ -0,0 +1,321 @@
+package data;
+
+import java.util.function.LongToIntFunction;
+
+/**
+ * A SobelFilter computes Sobel edge intensities in a single pass.  For every
+ * pixel it computes the x and y gradients of all three channels, sums their
+ * squares into an energy, and maps the energy to a grayscale intensity.
+ * Edge pixels are replicated past the border, as in PixelMatrix.convolve().
+ * <p/>
+ * The result is the same as convolving with the Sobel kernels
+ * <pre>
+ *     x: [ -1 0 1        y: [ -1 -2 -1
+ *          -2 0 2               0  0  0
+ *          -1 0 1 ]             1  2  1 ]
+ * </pre>
+ * and mapping gx^2 + gy^2 summed over channels through energyToGray, but
+ * each source pixel is read once per row instead of once per tap.  The
+ * three channels share one 64-bit add chain, in 16-bit lanes that are
+ * offset to stay positive.  The mapping is evaluated once per possible energy range
+ * when the filter is built, so no logarithm is taken per pixel.
+ * <p/>
+ * Where VectorSupport finds SIMD kernels, the rows are kept as planar ints
+ * instead and the energies are computed a vector of pixels at a time; the
+ * results are the same.
+ */
+public class SobelFilter {
+
+    /**
+     * MAX_ENERGY is the largest energy the lookup table covers, matching the
+     * range documented for PixImg.mag2gray().  Real images never exceed
+     * 3 * 2 * 1020^2 = 6,242,400.
+     */
+    public static final int MAX_ENERGY = 24969600;
+
+    private static final int BUCKET_SHIFT = 8;
+
+    // Each 16-bit lane of a gradient is offset by this much, so that the
+    // lane never goes negative and borrows from its neighbour.
+    private static final int GRADIENT_BIAS = 1024;
+    private static final long LANES_1024 = 1024L << 32 | 1024L << 16 | 1024L;
+    private static final long LANES_256 = 256L << 32 | 256L << 16 | 256L;
+
+    private static final VectorKernels KERNELS = VectorSupport.getKernels();
+
+    // thresholds[k] is the smallest energy that maps to intensity k or more.
+    private final int[] thresholds = new int[257];
+    // buckets[e >> BUCKET_SHIFT] is the intensity of the smallest energy in
+    // that bucket.
+    private final byte[] buckets = new byte[(MAX_ENERGY >> BUCKET_SHIFT) + 1];
+
+    /**
+     * SobelFilter() constructs a filter that maps energies to intensities
+     * with the given function, which must be non-decreasing and return values
+     * in 0...255.  A SobelFilter is immutable and can be shared by threads.
+     */
+    public SobelFilter(LongToIntFunction energyToGray) {
+        // Find each step of the mapping by binary search.
+        thresholds[0] = 0;
+        for (int k = 1; k <= 256; k++) {
+            int low = thresholds[k - 1];
+            int high = MAX_ENERGY + 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (energyToGray.applyAsInt(middle) >= k) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            thresholds[k] = low > MAX_ENERGY ? Integer.MAX_VALUE : low;
+        }
+
+        int gray = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            int energy = b << BUCKET_SHIFT;
+            while (energy >= thresholds[gray + 1]) {
+                gray++;
+            }
+            buckets[b] = (byte) gray;
+        }
+    }
+
+    /**
+     * gray() returns the intensity for an energy in 0...MAX_ENERGY.
+     */
+    public int gray(int energy) {
+        if (energy > MAX_ENERGY) {
+            energy = MAX_ENERGY;
+        }
+        int gray = buckets[energy >>> BUCKET_SHIFT] & 0xFF;
+        // A bucket can straddle a step or two at the low end of the curve.
+        while (energy >= thresholds[gray + 1]) {
+            gray++;
+        }
+        return gray;
+    }
+
+    /**
+     * filter() writes the grayscale edge intensities of src into dst, using
+     * the default TiledExecutor.
+     */
+    public void filter(PixelStorage src, PixelStorage dst) {
+        filter(src, dst, TiledExecutor.getDefault());
+    }
+
+    /**
+     * filter() writes the grayscale edge intensities of src into dst.  The
+     * rows are processed in parallel bands.  src and dst must be different
+     * storages of the same size.
+     */
+    public void filter(final PixelStorage src, final PixelStorage dst, TiledExecutor executor) {
+        final int width = src.getWidth();
+        executor.forEachBand(src.getHeight(), new TiledExecutor.BandTask() {
+            @Override
+            public void run(int band, int y0, int y1) {
+                Pass pass = new Pass(src);
+                int[] row = new int[width];
+                pass.start(y0);
+                for (int y = y0; y < y1; y++) {
+                    pass.nextRow(row);
+                    dst.setRGB(y * width, row, 0, width);
+                }
+            }
+        });
+    }
+
+    /**
+     * stream() returns a RowStage that computes the edge intensities of src
+     * as its rows are read.  Only three rows of src are held at a time, and
+     * the rows are the same as filter() would produce.
+     *
+     * @param src the rows to filter, read in order.
+     */
+    public RowSource stream(final RowSource src) {
+        final Pass pass = new Pass(src);
+        return new RowStage(src.getWidth(), src.getHeight()) {
+            @Override
+            protected void computeRow(int y, int[] row) {
+                if (y == 0) {
+                    pass.start(0);
+                }
+                pass.nextRow(row);
+            }
+        };
+    }
+
+    /**
+     * widen() spreads a packed colour into three 16-bit lanes of a long.
+     */
+    private static long widen(int argb) {
+        return (long) Pixel.red(argb) << 32 | (long) Pixel.green(argb) << 16 | Pixel.blue(argb);
+    }
+
+    private static int lane(long lanes, int shift) {
+        return (int) (lanes >>> shift & 0xFFFF) - GRADIENT_BIAS;
+    }
+
+    /**
+     * A Pass produces consecutive rows of edge intensities.  It keeps the
+     * rows above, at and below the current row, widened and padded by one
+     * replicated pixel at each end; or, with SIMD kernels, split into planes
+     * and padded the same way.
+     */
+    class Pass {
+
+        private final RowSource src;
+        private final int width;
+        private final int height;
+
+        private final int[] row;
+        private long[] above;
+        private long[] middle;
+        private long[] below;
+
+        private int[] planarAbove;
+        private int[] planarMiddle;
+        private int[] planarBelow;
+        private int[] energies;
+
+        private int y;
+
+        Pass(RowSource src) {
+            this.src = src;
+            width = src.getWidth();
+            height = src.getHeight();
+
+            row = new int[width];
+            if (KERNELS != null) {
+                planarAbove = new int[3 * (width + 2)];
+                planarMiddle = new int[3 * (width + 2)];
+                planarBelow = new int[3 * (width + 2)];
+                energies = new int[width];
+            } else {
+                above = new long[width + 2];
+                middle = new long[width + 2];
+                below = new long[width + 2];
+            }
+        }
+
+        void start(int y0) {
+            y = y0;
+            if (y0 < height) {
+                load(Math.max(y0 - 1, 0), 0);
+                load(y0, 1);
+                load(Math.min(y0 + 1, height - 1), 2);
+            }
+        }
+
+        /**
+         * load() reads sourceRow into the row buffer for the window row
+         * (0 above, 1 middle, 2 below).
+         */
+        private void load(int sourceRow, int windowRow) {
+            if (KERNELS != null) {
+                load(sourceRow, windowRow == 0 ? planarAbove : windowRow == 1 ? planarMiddle : planarBelow);
+            } else {
+                load(sourceRow, windowRow == 0 ? above : windowRow == 1 ? middle : below);
+            }
+        }
+
+        private void load(int sourceRow, long[] lanes) {
+            src.readRow(sourceRow, row);
+            for (int x = 0; x < width; x++) {
+                lanes[x + 1] = widen(row[x]);
+            }
+            lanes[0] = lanes[1];
+            lanes[width + 1] = lanes[width];
+        }
+
+        private void load(int sourceRow, int[] planes) {
+            src.readRow(sourceRow, row);
+            int stride = width + 2;
+            for (int x = 0; x < width; x++) {
+                planes[x + 1] = Pixel.red(row[x]);
+                planes[stride + x + 1] = Pixel.green(row[x]);
+                planes[2 * stride + x + 1] = Pixel.blue(row[x]);
+            }
+            for (int plane = 0; plane < 3 * stride; plane += stride) {
+                planes[plane] = planes[plane + 1];
+                planes[plane + width + 1] = planes[plane + width];
+            }
+        }
+
+        /**
+         * nextRow() computes the next row of intensities as packed gray
+         * colours.
+         */
+        void nextRow(int[] out) {
+            if (KERNELS != null) {
+                KERNELS.sobelEnergies(planarAbove, planarMiddle, planarBelow, energies);
+                for (int x = 0; x < width; x++) {
+                    int gray = gray(energies[x]);
+                    out[x] = Pixel.pack(gray, gray, gray);
+                }
+                slide();
+                return;
+            }
+
+            long[] a = above;
+            long[] b = middle;
+            long[] c = below;
+
+            // Column x of the window is smoothed down the column (1 2 1) for
+            // gx and differenced (-1 0 1) for gy.
+            long smoothLeft = a[0] + 2 * b[0] + c[0];
+            long smoothCentre = a[1] + 2 * b[1] + c[1];
+            long diffLeft = c[0] - a[0] + LANES_256;
+            long diffCentre = c[1] - a[1] + LANES_256;
+            for (int x = 0; x < width; x++) {
+                long smoothRight = a[x + 2] + 2 * b[x + 2] + c[x + 2];
+                long diffRight = c[x + 2] - a[x + 2] + LANES_256;
+
+                long gx = smoothRight - smoothLeft + LANES_1024;
+                // Four biased differences carry a bias of 4 * 256 = 1024.
+                long gy = diffLeft + 2 * diffCentre + diffRight;
+
+                int redX = lane(gx, 32);
+                int greenX = lane(gx, 16);
+                int blueX = lane(gx, 0);
+                int redY = lane(gy, 32);
+                int greenY = lane(gy, 16);
+                int blueY = lane(gy, 0);
+                int energy = redX * redX + redY * redY
+                        + greenX * greenX + greenY * greenY
+                        + blueX * blueX + blueY * blueY;
+
+                int gray = gray(energy);
+                out[x] = Pixel.pack(gray, gray, gray);
+
+                smoothLeft = smoothCentre;
+                smoothCentre = smoothRight;
+                diffLeft = diffCentre;
+                diffCentre = diffRight;
+            }
+
+            slide();
+        }
+
+        /**
+         * slide() moves the window down one row.
+         */
+        private void slide() {
+            y++;
+            if (y < height) {
+                if (KERNELS != null) {
+                    int[] recycled = planarAbove;
+                    planarAbove = planarMiddle;
+                    planarMiddle = planarBelow;
+                    planarBelow = recycled;
+                } else {
+                    long[] recycled = above;
+                    above = middle;
+                    middle = below;
+                    below = recycled;
+                }
+                load(Math.min(y + 1, height - 1), 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package data;
+
+/**
+ * A SummedAreaTable (or integral image) holds, for each channel, the sum of
+ * every pixel above and to the left of each point of an image.  Built once,
+ * in one pass over the rows, it answers the sum or mean of any rectangle
+ * with four lookups, so filters that average a window cost the same per
+ * pixel whatever the window's size.  The image itself is not kept; a pixel
+ * is just a 1x1 rectangle.
+ * <p/>
+ * Windows are clipped to the image and averaged over the pixels left inside
+ * it, rounding toward zero, exactly as PixelMatrix.neighborhoodAverage() and
+ * BoxBlur do; boxBlur() with radius r gives the same pixels as one BoxBlur
+ * pass of radius r.
+ * <p/>
+ * The sums of each channel are kept in an int array when the whole image's
+ * sum fits in one (images up to about 8 megapixels), and in a long array
+ * otherwise.  A table built with squares also keeps the sums of the squared
+ * intensities, in longs, which normalizeContrast() needs for the local
+ * standard deviation.  The table is a copy: changing the image afterward
+ * does not change it.  It can be read from any number of threads.
+ */
+public class SummedAreaTable {
+
+    public static final int RED = 0;
+    public static final int GREEN = 1;
+    public static final int BLUE = 2;
+
+    // normalizeContrast() never divides by a smaller deviation than this, so
+    // that flat regions are not blown up into noise.
+    public static final double MIN_DEVIATION = 4;
+
+    private final int width;
+    private final int height;
+    // Row stride of the tables, which have an extra row and column of zeros
+    // at the top and left.
+    private final int stride;
+
+    // One plane per channel; exactly one of intSums and longSums is set.
+    private final int[][] intSums;
+    private final long[][] longSums;
+    private final long[][] squares;
+
+    private final TiledExecutor executor;
+
+    /**
+     * SummedAreaTable() builds the table for the rows of src, which are read
+     * once each, in order.
+     */
+    public SummedAreaTable(RowSource src) {
+        this(src, false);
+    }
+
+    /**
+     * SummedAreaTable() builds the table for the rows of src, which are read
+     * once each, in order, also summing the squared intensities if squares
+     * is true.
+     */
+    public SummedAreaTable(RowSource src, boolean squares) {
+        this(src, squares, TiledExecutor.getDefault());
+    }
+
+    /**
+     * SummedAreaTable() builds the table for the rows of src, as above, and
+     * runs the filters' bands on the given executor.
+     */
+    public SummedAreaTable(RowSource src, boolean squares, TiledExecutor executor) {
+        width = src.getWidth();
+        height = src.getHeight();
+        stride = width + 1;
+        this.executor = executor;
+
+        int size = (height + 1) * stride;
+        if (255L * width * height <= Integer.MAX_VALUE) {
+            intSums = new int[3][size];
+            longSums = null;
+        } else {
+            intSums = null;
+            longSums = new long[3][size];
+        }
+        this.squares = squares ? new long[3][size] : null;
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            src.readRow(y, row);
+            for (int channel = RED; channel <= BLUE; channel++) {
+                sumRow(row, y, channel);
+            }
+        }
+    }
+
+    /**
+     * sumRow() fills in row y + 1 of channel's tables from row y of the image
+     * and the table row above.
+     */
+    private void sumRow(int[] row, int y, int channel) {
+        int shift = 16 - 8 * channel;
+        int above = y * stride + 1;
+        int here = (y + 1) * stride + 1;
+
+        long rowSum = 0;
+        long rowSquares = 0;
+        for (int x = 0; x < width; x++) {
+            int value = (row[x] >> shift) & 0xFF;
+            rowSum += value;
+            if (intSums != null) {
+                intSums[channel][here + x] = intSums[channel][above + x] + (int) rowSum;
+            } else {
+                longSums[channel][here + x] = longSums[channel][above + x] + rowSum;
+            }
+            if (squares != null) {
+                rowSquares += value * value;
+                squares[channel][here + x] = squares[channel][above + x] + rowSquares;
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * sum() returns the sum of channel (RED, GREEN or BLUE) over the pixels
+     * in columns x0...x1 - 1 and rows y0...y1 - 1 that lie inside the image.
+     */
+    public long sum(int channel, int x0, int y0, int x1, int y1) {
+        x0 = clip(x0, width);
+        x1 = clip(x1, width);
+        y0 = clip(y0, height);
+        y1 = clip(y1, height);
+        if (x0 >= x1 || y0 >= y1) {
+            return 0;
+        }
+        return lookup(channel, x0, y0, x1, y1);
+    }
+
+    /**
+     * count() returns the number of pixels in columns x0...x1 - 1 and rows
+     * y0...y1 - 1 that lie inside the image.
+     */
+    public int count(int x0, int y0, int x1, int y1) {
+        int columns = clip(x1, width) - clip(x0, width);
+        int rows = clip(y1, height) - clip(y0, height);
+        return columns > 0 && rows > 0 ? columns * rows : 0;
+    }
+
+    /**
+     * mean() returns the mean colour, packed as Pixel.pack() does, of the
+     * pixels in columns x0...x1 - 1 and rows y0...y1 - 1 that lie inside the
+     * image, rounding toward zero.
+     *
+     * @throws IllegalArgumentException if no pixel of the rectangle is in
+     *                                  the image.
+     */
+    public int mean(int x0, int y0, int x1, int y1) {
+        long count = count(x0, y0, x1, y1);
+        if (count == 0) {
+            throw new IllegalArgumentException("No pixels in [" + x0 + ", " + x1 + ") x [" +
+                    y0 + ", " + y1 + ")");
+        }
+        return Pixel.pack((int) (sum(RED, x0, y0, x1, y1) / count),
+                (int) (sum(GREEN, x0, y0, x1, y1) / count),
+                (int) (sum(BLUE, x0, y0, x1, y1) / count));
+    }
+
+    /**
+     * boxBlur() writes to dst the image averaged over the (2 * radius + 1)-
+     * square window around each pixel.  With radius 1 this is one pass of
+     * PixImg.boxBlur().
+     */
+    public void boxBlur(final int radius, final PixelStorage dst) {
+        forEachWindow(radius, dst, new WindowFilter() {
+            @Override
+            public int filter(int x, int y, int x0, int y0, int x1, int y1, int count) {
+                return Pixel.pack((int) (lookup(RED, x0, y0, x1, y1) / count),
+                        (int) (lookup(GREEN, x0, y0, x1, y1) / count),
+                        (int) (lookup(BLUE, x0, y0, x1, y1) / count));
+            }
+        });
+    }
+
+    /**
+     * threshold() writes to dst a black and white image: a pixel becomes
+     * white if the mean of its red, green and blue intensities is at least
+     * the mean intensity of the (2 * radius + 1)-square window around it,
+     * less offset, and black otherwise.  Unlike a single threshold for the
+     * whole image, this picks out dark detail on a light background
+     * however the lighting varies across the image.
+     */
+    public void threshold(final int radius, final int offset, final PixelStorage dst) {
+        forEachWindow(radius, dst, new WindowFilter() {
+            @Override
+            public int filter(int x, int y, int x0, int y0, int x1, int y1, int count) {
+                long value = (lookup(RED, x, y, x + 1, y + 1) + lookup(GREEN, x, y, x + 1, y + 1) +
+                        lookup(BLUE, x, y, x + 1, y + 1)) / 3;
+                long total = lookup(RED, x0, y0, x1, y1) + lookup(GREEN, x0, y0, x1, y1) +
+                        lookup(BLUE, x0, y0, x1, y1);
+                long mean = total / (3L * count);
+                return value >= mean - offset ? Pixel.pack(255, 255, 255) : Pixel.pack(0, 0, 0);
+            }
+        });
+    }
+
+    /**
+     * normalizeContrast() writes to dst the image with each channel of each
+     * pixel replaced by its distance from the mean of the (2 * radius + 1)-
+     * square window around it, in units of the window's standard deviation
+     * (but at least MIN_DEVIATION): the local mean becomes 128, and two
+     * deviations either side span 0...255.  Detail comes out equally strong
+     * in dim and bright, flat and busy parts of the image.  The table must
+     * have been built with squares.
+     */
+    public void normalizeContrast(final int radius, final PixelStorage dst) {
+        if (squares == null) {
+            throw new IllegalStateException("normalizeContrast() needs a table built with squares");
+        }
+        forEachWindow(radius, dst, new WindowFilter() {
+            @Override
+            public int filter(int x, int y, int x0, int y0, int x1, int y1, int count) {
+                return Pixel.pack(normalize(RED, x, y, x0, y0, x1, y1, count),
+                        normalize(GREEN, x, y, x0, y0, x1, y1, count),
+                        normalize(BLUE, x, y, x0, y0, x1, y1, count));
+            }
+        });
+    }
+
+    /**
+     * normalize() returns channel's intensity at (x, y), normalized against
+     * the window given as for a WindowFilter.
+     */
+    private int normalize(int channel, int x, int y, int x0, int y0, int x1, int y1, int count) {
+        long value = lookup(channel, x, y, x + 1, y + 1);
+        double mean = (double) lookup(channel, x0, y0, x1, y1) / count;
+        double meanSquare = (double) lookup(squares[channel], x0, y0, x1, y1) / count;
+        double deviation = Math.sqrt(Math.max(meanSquare - mean * mean, 0));
+        long level = Math.round(128 + 64 * (value - mean) / Math.max(deviation, MIN_DEVIATION));
+        return (int) Math.max(0, Math.min(255, level));
+    }
+
+    /**
+     * A WindowFilter computes one output pixel from the window around (x, y),
+     * given as columns x0...x1 - 1 and rows y0...y1 - 1, already clipped to
+     * the image, of count pixels.
+     */
+    private interface WindowFilter {
+        int filter(int x, int y, int x0, int y0, int x1, int y1, int count);
+    }
+
+    /**
+     * forEachWindow() runs filter over every pixel, with the bands of rows in
+     * parallel, and writes the results to dst.
+     */
+    private void forEachWindow(final int radius, final PixelStorage dst, final WindowFilter filter) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Negative radius " + radius);
+        }
+        PassRunner.checkSize(dst, width, height);
+        executor.forEachBand(height, new TiledExecutor.BandTask() {
+            @Override
+            public void run(int band, int y0, int y1) {
+                int[] row = new int[width];
+                for (int y = y0; y < y1; y++) {
+                    int top = Math.max(y - radius, 0);
+                    int bottom = (int) Math.min((long) y + radius + 1, height);
+                    for (int x = 0; x < width; x++) {
+                        int left = Math.max(x - radius, 0);
+                        int right = (int) Math.min((long) x + radius + 1, width);
+                        row[x] = filter.filter(x, y, left, top, right, bottom, (right - left) * (bottom - top));
+                    }
+                    dst.setRGB(y * width, row, 0, width);
+                }
+            }
+        });
+    }
+
+    /**
+     * lookup() returns channel's sum over columns x0...x1 - 1 and rows
+     * y0...y1 - 1, which must be inside the image.
+     */
+    private long lookup(int channel, int x0, int y0, int x1, int y1) {
+        if (intSums != null) {
+            int[] sums = intSums[channel];
+            return sums[y1 * stride + x1] - sums[y0 * stride + x1] - sums[y1 * stride + x0] + sums[y0 * stride + x0];
+        }
+        return lookup(longSums[channel], x0, y0, x1, y1);
+    }
+
+    private long lookup(long[] sums, int x0, int y0, int x1, int y1) {
+        return sums[y1 * stride + x1] - sums[y0 * stride + x1] - sums[y1 * stride + x0] + sums[y0 * stride + x0];
+    }
+
+    private static int clip(int i, int size) {
+        return Math.max(0, Math.min(i, size));
+    }
+}
@@ -0,0 +1,183 @@
+package data;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A TiledExecutor runs a row-by-row image operation in parallel.  It cuts
+ * the image into horizontal bands of tileHeight rows and hands the bands to
+ * a ForkJoinPool.  The results are identical to the serial path.
+ * <p/>
+ * Each band writes only its own rows of the output.  It reads its input rows
+ * plus however many halo rows above and below its kernel needs, straight out
+ * of the shared, read-only source image.  A band never reads another band's
+ * output.  Operations that need several passes (like iterated box blur) run
+ * the bands of one pass to completion before starting the next.
+ * <p/>
+ * The default executor can be tuned per host with two system properties:
+ * pix.parallelism (the number of worker threads; 0 or unset means the
+ * common pool) and pix.tileHeight (rows per band).
+ */
+public class TiledExecutor {
+
+    public static final String PARALLELISM_PROPERTY = "pix.parallelism";
+    public static final String TILE_HEIGHT_PROPERTY = "pix.tileHeight";
+
+    public static final int DEFAULT_TILE_HEIGHT = 64;
+
+    private static TiledExecutor defaultExecutor;
+
+    private final ForkJoinPool pool;
+    private final int tileHeight;
+
+    /**
+     * TiledExecutor() constructs an executor that runs bands of tileHeight
+     * rows on the given pool.
+     *
+     * @param pool       the pool to run bands on.
+     * @param tileHeight the number of rows in each band.
+     */
+    public TiledExecutor(ForkJoinPool pool, int tileHeight) {
+        if (tileHeight < 1) {
+            throw new IllegalArgumentException("Tile height must be positive: " + tileHeight);
+        }
+        this.pool = pool;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * TiledExecutor() constructs an executor with its own pool of the given
+     * number of worker threads.
+     */
+    public TiledExecutor(int parallelism, int tileHeight) {
+        this(new ForkJoinPool(parallelism), tileHeight);
+    }
+
+    /**
+     * serial() returns an executor that runs every band on the calling
+     * thread.
+     */
+    public static TiledExecutor serial() {
+        return new TiledExecutor((ForkJoinPool) null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * getDefault() returns the executor PixImg uses, building it from the
+     * pix.parallelism and pix.tileHeight system properties the first time.
+     */
+    public static synchronized TiledExecutor getDefault() {
+        if (defaultExecutor == null) {
+            int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 0);
+            int tileHeight = Integer.getInteger(TILE_HEIGHT_PROPERTY, DEFAULT_TILE_HEIGHT);
+            ForkJoinPool pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+            defaultExecutor = new TiledExecutor(pool, tileHeight);
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * setDefault() replaces the executor PixImg uses.
+     */
+    public static synchronized void setDefault(TiledExecutor executor) {
+        defaultExecutor = executor;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * getParallelism() returns the number of worker threads, or 1 for
+     * a serial executor.
+     */
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * bandCount() returns the number of bands an image of the given height is
+     * cut into.  No more than getParallelism() of them run at once, so
+     * operations should size their scratch buffers by that rather than by
+     * this.
+     */
+    public int bandCount(int height) {
+        if (height <= 0) {
+            return 0;
+        }
+        return (int) (((long) height + tileHeight - 1) / tileHeight);
+    }
+
+    /**
+     * forEachBand() runs task once for each band of an image of the given
+     * height, and returns when every band is done.  Band i covers rows
+     * i * tileHeight up to (but not including) min((i + 1) * tileHeight,
+     * height).
+     *
+     * @param height the height of the image.
+     * @param task   the work to do on each band.
+     */
+    public void forEachBand(int height, BandTask task) {
+        int bands = bandCount(height);
+        if (bands == 0) {
+            return;
+        }
+        if (bands == 1 || pool == null || pool.getParallelism() == 1) {
+            for (int band = 0; band < bands; band++) {
+                runBand(task, band, height);
+            }
+        } else {
+            pool.invoke(new BandRange(task, height, 0, bands));
+        }
+    }
+
+    private void runBand(BandTask task, int band, int height) {
+        int y0 = band * tileHeight;
+        int y1 = (int) Math.min((long) y0 + tileHeight, height);
+        task.run(band, y0, y1);
+    }
+
+    /**
+     * A BandTask is an operation on one band of rows.
+     */
+    public interface BandTask {
+
+        /**
+         * run() processes rows y0...y1 - 1.
+         *
+         * @param band the index of the band, for looking up per-band scratch.
+         * @param y0   the first row of the band.
+         * @param y1   one past the last row of the band.
+         */
+        void run(int band, int y0, int y1);
+    }
+
+    /**
+     * A BandRange runs a contiguous range of bands, splitting itself in half
+     * until each piece is a single band.
+     */
+    private class BandRange extends RecursiveAction {
+
+        private final BandTask task;
+        private final int height;
+        private final int first;
+        private final int last;
+
+        BandRange(BandTask task, int height, int first, int last) {
+            this.task = task;
+            this.height = height;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                runBand(task, first, height);
+            } else {
+                int middle = (first + last) >>> 1;
+                invokeAll(new BandRange(task, height, first, middle),
+                        new BandRange(task, height, middle, last));
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package data;
+
+/**
+ * VectorKernels are SIMD versions of the innermost loops of BoxBlur and
+ * SobelFilter, working on whole rows of primitive ints.  Each method gives
+ * exactly the results of the scalar loop it stands in for, so images come
+ * out the same either way.
+ * <p/>
+ * Sums and intensities are planar by channel: red in [0, n), green in
+ * [n, 2 * n), blue in [2 * n, 3 * n), where n is the row length (padded or
+ * not, as each method says).
+ * <p/>
+ * The implementation lives in the vector module and is found by
+ * VectorSupport, which falls back to the scalar loops when it cannot be
+ * used.
+ */
+public interface VectorKernels {
+
+    /**
+     * add() adds sums to total, element by element.
+     */
+    void add(int[] total, int[] sums);
+
+    /**
+     * subtract() subtracts sums from total, element by element.
+     */
+    void subtract(int[] total, int[] sums);
+
+    /**
+     * average() divides the planar column sums of a row of width
+     * out.length by columnCounts[x] * rowCount, rounding toward zero, and
+     * packs the quotients into out as Pixel.pack() does.
+     */
+    void average(int[] sums, int[] columnCounts, int rowCount, int[] out);
+
+    /**
+     * sobelEnergies() computes the Sobel energy (gx^2 + gy^2 summed over the
+     * channels) of each pixel of a row of width energies.length from the
+     * planar intensities of the rows above, at and below it.  Each plane is
+     * energies.length + 2 long, with the edge pixel repeated at each end.
+     */
+    void sobelEnergies(int[] above, int[] middle, int[] below, int[] energies);
+
+    /**
+     * describe() returns a short description of the instructions used, such
+     * as "256-bit vectors, 8 ints".
+     */
+    String describe();
+}
@@ -0,0 +1,68 @@
+package data;
+
+/**
+ * VectorSupport finds the VectorKernels that BoxBlur and SobelFilter use.
+ * <p/>
+ * The kernels are written with the jdk.incubator.vector API, which needs
+ * Java 16 or later, while the rest of the project is built for Java 8, so
+ * they are compiled in a separate module (vector) and loaded here by name.
+ * They are used only if
+ * <ul>
+ * <li>the vector module's classes are on the class path,</li>
+ * <li>the JVM was started with --add-modules jdk.incubator.vector,</li>
+ * <li>the processor's preferred vectors hold at least four ints, and</li>
+ * <li>the pix.vector system property is not "false".</li>
+ * </ul>
+ * Otherwise getKernels() returns null and the scalar loops run, with the
+ * same results.  describe() says which was chosen, and why.
+ */
+public final class VectorSupport {
+
+    public static final String PROPERTY = "pix.vector";
+
+    private static final String IMPLEMENTATION = "data.vector.SimdKernels";
+
+    private static String description;
+    private static final VectorKernels KERNELS = load();
+
+    private VectorSupport() {
+    }
+
+    private static VectorKernels load() {
+        if (System.getProperty(PROPERTY, "true").equals("false")) {
+            description = "scalar (" + PROPERTY + "=false)";
+            return null;
+        }
+        try {
+            VectorKernels kernels = (VectorKernels) Class.forName(IMPLEMENTATION)
+                    .getDeclaredConstructor().newInstance();
+            description = kernels.describe();
+            return kernels;
+        } catch (ClassNotFoundException e) {
+            description = "scalar (the vector module is not on the class path)";
+        } catch (LinkageError e) {
+            // An older JVM, or jdk.incubator.vector not added to the boot
+            // layer.
+            description = "scalar (jdk.incubator.vector is not available: " + e + ")";
+        } catch (ReflectiveOperationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            description = "scalar (" + cause.getMessage() + ")";
+        }
+        return null;
+    }
+
+    /**
+     * getKernels() returns the SIMD kernels, or null if the scalar loops
+     * should be used.
+     */
+    public static VectorKernels getKernels() {
+        return KERNELS;
+    }
+
+    /**
+     * describe() says whether SIMD kernels are in use, and which, or why not.
+     */
+    public static String describe() {
+        return description;
+    }
+}
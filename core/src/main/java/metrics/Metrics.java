@@ -0,0 +1,154 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Metrics times the image operations and reports them to the current
+ * MetricsRegistry.  An operation is instrumented like this:
+ * <p/>
+ * Metrics.Sample sample = Metrics.start("boxBlur");
+ * ... do the work ...
+ * sample.stop(pixels, bytesRead, bytesWritten);
+ * <p/>
+ * By default the records are summed per operation by an OperationStats,
+ * which can print them as JSON or in the Prometheus text format.  A sample
+ * costs two clock reads and two reads of the thread's allocation counter, so
+ * it is only meant for operations on whole images.
+ * <p/>
+ * Allocated bytes come from the JVM's ThreadMXBean and count only what the
+ * calling thread allocates.  Work an operation hands to other threads (the
+ * bands of a TiledExecutor, say) is timed but its allocation is not seen.
+ * <p/>
+ * If the system property pix.metrics names a file, the default stats are
+ * written to it when the JVM exits: in the Prometheus text format if the
+ * name ends in ".prom" (ready for a node exporter's textfile collector),
+ * and as JSON otherwise.
+ */
+public class Metrics {
+
+    public static final String DUMP_FILE_PROPERTY = "pix.metrics";
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private static final OperationStats DEFAULT_STATS = new OperationStats();
+    private static volatile MetricsRegistry registry = DEFAULT_STATS;
+
+    static {
+        String dumpFile = System.getProperty(DUMP_FILE_PROPERTY);
+        if (dumpFile != null && !dumpFile.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        dump(dumpFile);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, "metrics-dump"));
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * getRegistry() returns the registry that samples report to.
+     */
+    public static MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * setRegistry() makes samples that stop from now on report to registry.
+     */
+    public static void setRegistry(MetricsRegistry registry) {
+        if (registry == null) {
+            throw new NullPointerException("registry");
+        }
+        Metrics.registry = registry;
+    }
+
+    /**
+     * getStats() returns the OperationStats that is the registry unless
+     * setRegistry() has replaced it.
+     */
+    public static OperationStats getStats() {
+        return DEFAULT_STATS;
+    }
+
+    /**
+     * dump() writes the default stats to file, in the Prometheus text format
+     * if its name ends in ".prom" and as JSON otherwise.
+     */
+    public static void dump(String file) throws IOException {
+        String text = file.endsWith(".prom") ? DEFAULT_STATS.toPrometheus() : DEFAULT_STATS.toJSON();
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(Paths.get(file)),
+                StandardCharsets.UTF_8)) {
+            out.write(text);
+        }
+    }
+
+    /**
+     * start() starts timing one run of operation on the calling thread.
+     */
+    public static Sample start(String operation) {
+        return new Sample(operation);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            Object bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+                if (threads.isThreadAllocatedMemorySupported()) {
+                    threads.setThreadAllocatedMemoryEnabled(true);
+                    return threads;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+            // Not a HotSpot-style JVM; allocation is reported as unknown.
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * A Sample is one run of an operation being timed.  It must be stopped
+     * on the thread that started it.
+     */
+    public static class Sample {
+
+        private final String operation;
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Sample(String operation) {
+            this.operation = operation;
+            startAllocated = allocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * stop() ends the run and reports it.
+         *
+         * @param pixels       the number of pixels in the image worked on.
+         * @param bytesRead    the number of bytes read from files.
+         * @param bytesWritten the number of bytes written to files.
+         */
+        public void stop(long pixels, long bytesRead, long bytesWritten) {
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated;
+            registry.record(operation, nanos, pixels, bytesRead, bytesWritten, allocated);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package metrics;
+
+/**
+ * A MetricsRegistry receives one record each time an instrumented operation
+ * finishes.  Install one with Metrics.setRegistry() to send the records
+ * somewhere other than the built-in OperationStats, such as an application's
+ * own metrics library.  Implementations must be thread-safe: operations
+ * running on different threads record at the same time.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * record() reports one run of an operation.
+     *
+     * @param operation      the name of the operation, such as "boxBlur".
+     * @param nanos          the wall time the run took.
+     * @param pixels         the number of pixels in the image it worked on.
+     * @param bytesRead      the number of bytes it read from files.
+     * @param bytesWritten   the number of bytes it wrote to files.
+     * @param allocatedBytes the number of bytes the calling thread allocated
+     *                       during the run, or -1 if the JVM cannot tell.
+     */
+    void record(String operation, long nanos, long pixels, long bytesRead, long bytesWritten,
+                long allocatedBytes);
+}
@@ -0,0 +1,140 @@
+package metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An OperationStats is a MetricsRegistry that keeps running totals for each
+ * operation: how many times it ran, and the wall time, pixels, bytes read and
+ * written, and bytes allocated summed over the runs.  Totals only grow (until
+ * reset()), so they can be scraped as Prometheus counters and turned into
+ * rates, such as pixels per second, by the scraper.
+ * <p/>
+ * Recording is lock-free, and reading the totals does not stop recording, so
+ * a dump taken while operations are running may be a moment out of date.
+ */
+public class OperationStats implements MetricsRegistry {
+
+    // The totals kept for each operation, in the order of the counters.
+    private static final int RUNS = 0;
+    private static final int NANOS = 1;
+    private static final int PIXELS = 2;
+    private static final int BYTES_READ = 3;
+    private static final int BYTES_WRITTEN = 4;
+    private static final int ALLOCATED_BYTES = 5;
+
+    private static final String[] COUNTERS = {
+        "pix_operation_runs_total", "pix_operation_seconds_total", "pix_operation_pixels_total",
+        "pix_operation_read_bytes_total", "pix_operation_written_bytes_total",
+        "pix_operation_allocated_bytes_total"
+    };
+    private static final String[] HELP = {
+        "Runs of each image operation.", "Wall time spent in each operation.",
+        "Pixels in the images each operation worked on.", "Bytes read from files.",
+        "Bytes written to files.", "Bytes allocated by the thread running each operation."
+    };
+
+    private final ConcurrentMap<String, LongAdder[]> operations = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(String operation, long nanos, long pixels, long bytesRead, long bytesWritten,
+                       long allocatedBytes) {
+        LongAdder[] totals = operations.get(operation);
+        if (totals == null) {
+            LongAdder[] added = new LongAdder[COUNTERS.length];
+            for (int i = 0; i < added.length; i++) {
+                added[i] = new LongAdder();
+            }
+            totals = operations.putIfAbsent(operation, added);
+            if (totals == null) {
+                totals = added;
+            }
+        }
+        totals[RUNS].increment();
+        totals[NANOS].add(nanos);
+        totals[PIXELS].add(pixels);
+        totals[BYTES_READ].add(bytesRead);
+        totals[BYTES_WRITTEN].add(bytesWritten);
+        if (allocatedBytes >= 0) {
+            totals[ALLOCATED_BYTES].add(allocatedBytes);
+        }
+    }
+
+    /**
+     * getRuns() returns the number of times operation has run.
+     */
+    public long getRuns(String operation) {
+        LongAdder[] totals = operations.get(operation);
+        return totals == null ? 0 : totals[RUNS].sum();
+    }
+
+    /**
+     * reset() forgets every operation.
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    /**
+     * toJSON() returns the totals as a JSON object with one member per
+     * operation, in name order, each also giving the pixels per second of
+     * wall time spent in the operation.
+     */
+    public String toJSON() {
+        StringBuilder json = new StringBuilder("{");
+        String separator = "\n";
+        for (Map.Entry<String, LongAdder[]> entry : sorted().entrySet()) {
+            LongAdder[] totals = entry.getValue();
+            double seconds = totals[NANOS].sum() / 1e9;
+            long pixels = totals[PIXELS].sum();
+            json.append(separator).append("  \"").append(escape(entry.getKey())).append("\": {")
+                    .append("\"runs\": ").append(totals[RUNS].sum())
+                    .append(", \"seconds\": ").append(format(seconds))
+                    .append(", \"pixels\": ").append(pixels)
+                    .append(", \"pixelsPerSecond\": ").append(format(seconds > 0 ? pixels / seconds : 0))
+                    .append(", \"bytesRead\": ").append(totals[BYTES_READ].sum())
+                    .append(", \"bytesWritten\": ").append(totals[BYTES_WRITTEN].sum())
+                    .append(", \"allocatedBytes\": ").append(totals[ALLOCATED_BYTES].sum())
+                    .append('}');
+            separator = ",\n";
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    /**
+     * toPrometheus() returns the totals in the Prometheus text exposition
+     * format, as counters labelled by operation.
+     */
+    public String toPrometheus() {
+        Map<String, LongAdder[]> sorted = sorted();
+        StringBuilder text = new StringBuilder();
+        for (int counter = 0; counter < COUNTERS.length; counter++) {
+            text.append("# HELP ").append(COUNTERS[counter]).append(' ').append(HELP[counter]).append('\n');
+            text.append("# TYPE ").append(COUNTERS[counter]).append(" counter\n");
+            for (Map.Entry<String, LongAdder[]> entry : sorted.entrySet()) {
+                long sum = entry.getValue()[counter].sum();
+                text.append(COUNTERS[counter]).append("{operation=\"").append(escape(entry.getKey()))
+                        .append("\"} ").append(counter == NANOS ? format(sum / 1e9) : Long.toString(sum))
+                        .append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private Map<String, LongAdder[]> sorted() {
+        return new TreeMap<>(operations);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    // Both formats escape backslashes and double quotes the same way.
+    private static String escape(String name) {
+        return name.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
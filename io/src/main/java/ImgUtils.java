@@ -1,24 +1,12 @@
 /* ImageUtils.java */
 
-/* DO NOT CHANGE THIS FILE. */
-
-/* You may want to insert println() statements     */
-/* while testing your code.  When you're finished testing and debugging,     */
-/* please remove any statement you have added. */
-
-/**
- *  The ImgUtils class reads and writes TIFF file, converting to and from
- *  pixel arrays in PixImg format or run-length encodings in
- *  RunLengthEncoding format.  Methods are also included for displaying images
- *  in PixImg format.
- *
-
- **/
-
 import java.awt.Color;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 import javax.media.jai.JAI;
 import javax.media.jai.RenderedImageAdapter;
@@ -27,14 +15,19 @@ import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 
+import data.PixelStorage;
+import io.TIFFReader;
+import metrics.Metrics;
+
 /**
- *  ImgUtils contains utilities for reading, writing, and displaying images.
- * 
- *  It uses JAI to read and write TIFF files, as the standard libraries cannot
- *  read them.
- * 
- *  All image data is in RGB format (see BufferedImage.getRGB).
- */
+ *  The ImgUtils class reads and writes TIFF file, converting to and from
+ *  pixel arrays in PixImg format or run-length encodings in
+ *  RunLengthEncoding format.  Methods are also included for displaying images
+ *  in PixImg format.
+ *
+ *  TIFF files are read with io.TIFFReader, falling back on JAI for files it
+ *  cannot decode.  All image data is in RGB format (see BufferedImage.getRGB).
+ **/
 public class ImgUtils {
 
   /**
@@ -44,12 +37,12 @@ public class ImgUtils {
    */
   private static PixImg buffer2PixImg(BufferedImage bImage) {
     PixImg pImage = new PixImg(bImage.getWidth(), bImage.getHeight());
-    for (int x = 0; x < bImage.getWidth(); x++) {
-      for (int y = 0; y < bImage.getHeight(); y++) {
-        Color color = new Color(bImage.getRGB(x, y));
-        pImage.setPixel(x, y, (short) color.getRed(), (short) color.getGreen(),
-                        (short) color.getBlue());
-      }
+    PixelStorage storage = pImage.getStorage();
+    int[] row = new int[bImage.getWidth()];
+    // Copy a row of packed colours at a time, in row-major order.
+    for (int y = 0; y < bImage.getHeight(); y++) {
+      bImage.getRGB(0, y, row.length, 1, row, 0, row.length);
+      storage.setRGB(y * row.length, row, 0, row.length);
     }
     return pImage;
   }
@@ -89,7 +82,35 @@ public class ImgUtils {
    *  @return a PixImg of the file
    */
   public static PixImg readTIFFPix(String filename) {
-    return buffer2PixImg(readTIFF(filename));
+    return readTIFFPix(filename, true);
+  }
+
+  /**
+   *  readTIFFPix() reads an image from a file and formats it as a PixImg,
+   *  reading the file into the heap rather than mapping it if mapped is
+   *  false (see io.TIFFReader).
+   *  @param filename the name of the file to read.
+   *  @param mapped whether to memory-map the file.
+   *  @return a PixImg of the file
+   */
+  public static PixImg readTIFFPix(String filename, boolean mapped) {
+    Metrics.Sample sample = Metrics.start("readTIFFPix");
+    PixImg image = null;
+    // Baseline RGB files are decoded by io.TIFFReader; JAI handles
+    // everything else.  A strip that fails to decode surfaces as a
+    // RuntimeException from the decoding bands, and is handed to JAI too.
+    try (TIFFReader reader = TIFFReader.open(Paths.get(filename), mapped)) {
+      image = new PixImg(reader.getWidth(), reader.getHeight());
+      reader.read(image.getStorage());
+    } catch (IOException | RuntimeException e) {
+      if (image != null) {
+        image.release();
+      }
+      image = buffer2PixImg(readTIFF(filename));
+    }
+    sample.stop((long) image.getWidth() * image.getHeight(),
+                new File(filename).length(), 0);
+    return image;
   }
 
   /**
@@ -99,7 +120,13 @@ public class ImgUtils {
    *  @return a RunLengthEncoding of the file.
    */
   public static RunLengthEncoding readTIFFRLE(String filename) {
-    return new RunLengthEncoding(readTIFFPix(filename));
+    // PackBits files become runs without ever being decoded to pixels.
+    try (TIFFReader reader = TIFFReader.open(Paths.get(filename))) {
+      return new RunLengthEncoding(reader.getWidth(), reader.getHeight(),
+                                   reader.readRuns());
+    } catch (IOException | RuntimeException e) {
+      return new RunLengthEncoding(readTIFFPix(filename));
+    }
   }
 
   /**
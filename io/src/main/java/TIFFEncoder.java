@@ -0,0 +1,82 @@
+/* TIFFEncoder.java */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import data.RowSource;
+import io.TIFFWriter;
+import metrics.Metrics;
+
+/**
+ *  The TIFFEncoder class allows us to write a TIFF file from a pixel array
+ *  in PixImg format or from a run-length encoding in RunLengthEncoding
+ *  format.  A TIFF file written from a RunLengthEncoding is compressed as
+ *  a run-length encoding, so it may be much shorter than a TIFF file written
+ *  from a PixImg.
+ *
+ *  The files themselves are laid out by io.TIFFWriter.
+ *
+ **/
+public class TIFFEncoder {
+
+  /**
+   * writeTIFF() writes the specified PixImg into an uncompressed TIFF file.
+   *
+   * @param image the PixImg.
+   * @param filename the name of the file to write.
+   */
+  public static void writeTIFF(PixImg image, String filename) {
+    // Rows go straight from the image's storage to the file, a strip at a
+    // time; see io.TIFFWriter.
+    Metrics.Sample sample = Metrics.start("writeTIFF");
+    try {
+      Path file = Paths.get(filename);
+      new TIFFWriter().write(image.getStorage(), file);
+      sample.stop((long) image.getWidth() * image.getHeight(), 0, Files.size(file));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * writeTIFF() writes rows into an uncompressed TIFF file, a strip at a
+   * time as they are read, so each strip reaches the disk before the rows
+   * of the next one are computed.
+   *
+   * @param image the rows of the image, read once each, in order.
+   * @param filename the name of the file to write.
+   */
+  public static void writeTIFF(RowSource image, String filename) {
+    // The time includes computing the rows, which happens as they are read.
+    Metrics.Sample sample = Metrics.start("writeTIFFRows");
+    try {
+      Path file = Paths.get(filename);
+      new TIFFWriter().write(image, file);
+      sample.stop((long) image.getWidth() * image.getHeight(), 0, Files.size(file));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * writeTIFF() writes the given image data into a compressed TIFF file.
+   *
+   * @param rle a run-length encoding of the image data.
+   * @param filename the name of the file to write.
+   */
+  public static void writeTIFF(RunLengthEncoding rle, String filename) {
+    // The runs are packed and written a buffer at a time, so the encoded
+    // image is never held in memory; see io.TIFFWriter.
+    Metrics.Sample sample = Metrics.start("writeTIFFRLE");
+    try {
+      Path file = Paths.get(filename);
+      new TIFFWriter().writePackBits(rle.getRuns(), rle.getWidth(),
+                                     rle.getHeight(), file);
+      sample.stop((long) rle.getWidth() * rle.getHeight(), 0, Files.size(file));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A TIFFDirectory collects the fields of a TIFF image file directory (IFD)
+ * and lays them out as bytes.  Values that fit in the four-byte value
+ * field of an entry are stored there; longer ones are stored just after
+ * the directory and the entry points at them.
+ * <p/>
+ * Fields must be added in increasing tag order, as the TIFF spec requires.
+ * See Section 2 of the TIFF 6.0 spec for the layout.
+ */
+class TIFFDirectory {
+
+    static final int SHORT = 3;
+    static final int LONG = 4;
+
+    static final int IMAGE_WIDTH = 256;
+    static final int IMAGE_LENGTH = 257;
+    static final int BITS_PER_SAMPLE = 258;
+    static final int COMPRESSION = 259;
+    static final int PHOTOMETRIC_INTERPRETATION = 262;
+    static final int STRIP_OFFSETS = 273;
+    static final int SAMPLES_PER_PIXEL = 277;
+    static final int ROWS_PER_STRIP = 278;
+    static final int STRIP_BYTE_COUNTS = 279;
+    static final int PLANAR_CONFIGURATION = 284;
+    static final int PREDICTOR = 317;
+
+    static final int NO_COMPRESSION = 1;
+    static final int PACKBITS = 32773;
+    static final int RGB = 2;
+    static final int CHUNKY = 1;
+
+    private static final int ENTRY_SIZE = 12;
+
+    private final List<int[]> entries = new ArrayList<>();
+
+    /**
+     * add() appends a field.  Each entry is stored as {tag, type, values...}.
+     */
+    void add(int tag, int type, int... values) {
+        if (!entries.isEmpty() && entries.get(entries.size() - 1)[0] >= tag) {
+            throw new IllegalStateException("Tag " + tag + " is out of order");
+        }
+        int[] entry = new int[values.length + 2];
+        entry[0] = tag;
+        entry[1] = type;
+        System.arraycopy(values, 0, entry, 2, values.length);
+        entries.add(entry);
+    }
+
+    /**
+     * addBaselineRGB() adds the fields every 8-bit chunky RGB image we write
+     * shares, with the strip fields in between.
+     */
+    void addBaselineRGB(int width, int height, int compression, int rowsPerStrip,
+                        int[] stripOffsets, int[] stripByteCounts) {
+        add(IMAGE_WIDTH, LONG, width);
+        add(IMAGE_LENGTH, LONG, height);
+        add(BITS_PER_SAMPLE, SHORT, 8, 8, 8);
+        add(COMPRESSION, SHORT, compression);
+        add(PHOTOMETRIC_INTERPRETATION, SHORT, RGB);
+        add(STRIP_OFFSETS, LONG, stripOffsets);
+        add(SAMPLES_PER_PIXEL, SHORT, 3);
+        add(ROWS_PER_STRIP, LONG, rowsPerStrip);
+        add(STRIP_BYTE_COUNTS, LONG, stripByteCounts);
+        add(PLANAR_CONFIGURATION, SHORT, CHUNKY);
+    }
+
+    /**
+     * toBuffer() returns the directory, followed by its out-of-line values,
+     * as big-endian bytes ready to be written at the given file offset.
+     * The buffer is flipped, ready for reading.
+     */
+    ByteBuffer toBuffer(long offset) {
+        int directorySize = 2 + ENTRY_SIZE * entries.size() + 4;
+        int extraSize = 0;
+        for (int[] entry : entries) {
+            int size = valueSize(entry);
+            if (size > 4) {
+                extraSize += (size + 1) & ~1;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(directorySize + extraSize).order(ByteOrder.BIG_ENDIAN);
+        long extraOffset = offset + directorySize;
+        buffer.putShort((short) entries.size());
+        for (int[] entry : entries) {
+            int count = entry.length - 2;
+            buffer.putShort((short) entry[0]);
+            buffer.putShort((short) entry[1]);
+            buffer.putInt(count);
+            int size = valueSize(entry);
+            if (size <= 4) {
+                // Left-justified in the four-byte value field.
+                int start = buffer.position();
+                putValues(buffer, entry);
+                while (buffer.position() < start + 4) {
+                    buffer.put((byte) 0);
+                }
+            } else {
+                buffer.putInt(checkedOffset(extraOffset));
+                extraOffset += (size + 1) & ~1;
+            }
+        }
+        // No more directories.
+        buffer.putInt(0);
+
+        for (int[] entry : entries) {
+            int size = valueSize(entry);
+            if (size > 4) {
+                putValues(buffer, entry);
+                if ((size & 1) != 0) {
+                    buffer.put((byte) 0);
+                }
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int valueSize(int[] entry) {
+        return (entry.length - 2) * (entry[1] == SHORT ? 2 : 4);
+    }
+
+    private static void putValues(ByteBuffer buffer, int[] entry) {
+        for (int i = 2; i < entry.length; i++) {
+            if (entry[1] == SHORT) {
+                buffer.putShort((short) entry[i]);
+            } else {
+                buffer.putInt(entry[i]);
+            }
+        }
+    }
+
+    /**
+     * checkedOffset() returns offset as a TIFF LONG, which is an unsigned
+     * 32-bit value.
+     */
+    static int checkedOffset(long offset) {
+        if (offset > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("TIFF offsets are limited to 4GB: " + offset);
+        }
+        return (int) offset;
+    }
+}
@@ -0,0 +1,15 @@
+package io;
+
+import java.io.IOException;
+
+/**
+ * A TIFFFormatException is thrown when a file is not a TIFF, or uses
+ * features TIFFReader does not decode.  Callers can fall back to a general
+ * purpose decoder such as JAI.
+ */
+public class TIFFFormatException extends IOException {
+
+    public TIFFFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,520 @@
+package io;
+
+import data.Pixel;
+import data.PixelStorage;
+import data.RowSource;
+import data.RunTable;
+import data.TiledExecutor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A TIFFReader decodes the baseline RGB TIFFs our tools write: 8 bits per
+ * sample, three samples per pixel, chunky, uncompressed or PackBits, in
+ * either byte order and with any strip layout.  Anything else is rejected
+ * with a TIFFFormatException, so the caller can hand the file to JAI.
+ * <p/>
+ * The file is memory-mapped and strips are decoded straight from the
+ * mapping into packed colours; nothing is copied through a stream.  Files
+ * of 2GB or more are mapped one strip at a time.  A reader opened with
+ * mapping off reads the file (or each strip) into the heap with
+ * FileChannel.read() instead.  That costs a copy, but the reading thread
+ * then blocks only in the read, which a virtual thread can yield, and not
+ * in page faults, which pin it to its carrier.
+ * <p/>
+ * A TIFFReader is a RowSource, so rows can be pulled one at a time (each
+ * PackBits strip is decoded once and kept until a row from another strip is
+ * asked for).  read() decodes the whole image into a PixelStorage, with
+ * bands of strips decoded in parallel, and readRuns() decodes it into runs.
+ * readRow() and readRuns() are not thread-safe.
+ */
+public class TIFFReader implements RowSource, Closeable {
+
+    private final FileChannel channel;
+    private final boolean mapped;
+    // The whole file, or null if it is too large to hold in one buffer.
+    private final ByteBuffer file;
+    private final ByteOrder order;
+
+    private final int width;
+    private final int height;
+    private final int compression;
+    private final int rowsPerStrip;
+    private final long[] stripOffsets;
+    private final long[] stripByteCounts;
+
+    private StripDecoder rows;
+
+    private TIFFReader(FileChannel channel, boolean mapped) throws IOException {
+        this.channel = channel;
+        this.mapped = mapped;
+        long size = channel.size();
+        if (size < 8) {
+            throw new TIFFFormatException("File is too short to be a TIFF");
+        }
+        file = size > Integer.MAX_VALUE ? null
+                : mapped ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : read(0, size);
+        ByteBuffer header = map(0, 8);
+
+        if (header.get(0) == 'I' && header.get(1) == 'I') {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (header.get(0) == 'M' && header.get(1) == 'M') {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            throw new TIFFFormatException("Bad byte order mark");
+        }
+        header.order(order);
+        if (header.getShort(2) != 42) {
+            throw new TIFFFormatException("Bad magic number " + header.getShort(2));
+        }
+
+        Directory directory = new Directory(header.getInt(4) & 0xFFFFFFFFL);
+        width = (int) directory.value(TIFFDirectory.IMAGE_WIDTH, -1);
+        height = (int) directory.value(TIFFDirectory.IMAGE_LENGTH, -1);
+        compression = (int) directory.value(TIFFDirectory.COMPRESSION, TIFFDirectory.NO_COMPRESSION);
+        long samples = directory.value(TIFFDirectory.SAMPLES_PER_PIXEL, 1);
+        long photometric = directory.value(TIFFDirectory.PHOTOMETRIC_INTERPRETATION, -1);
+        long planar = directory.value(TIFFDirectory.PLANAR_CONFIGURATION, TIFFDirectory.CHUNKY);
+        long[] bits = directory.values(TIFFDirectory.BITS_PER_SAMPLE);
+
+        if (width <= 0 || height <= 0) {
+            throw new TIFFFormatException("Bad image size " + width + "x" + height);
+        }
+        if (samples != 3 || photometric != TIFFDirectory.RGB || planar != TIFFDirectory.CHUNKY
+                || bits == null || bits.length != 3 || bits[0] != 8 || bits[1] != 8 || bits[2] != 8) {
+            throw new TIFFFormatException("Only 8-bit chunky RGB is supported");
+        }
+        if (compression != TIFFDirectory.NO_COMPRESSION && compression != TIFFDirectory.PACKBITS) {
+            throw new TIFFFormatException("Unsupported compression " + compression);
+        }
+        if (directory.value(TIFFDirectory.PREDICTOR, 1) != 1) {
+            throw new TIFFFormatException("Predictors are not supported");
+        }
+
+        long stripHeight = directory.value(TIFFDirectory.ROWS_PER_STRIP, height);
+        if (stripHeight <= 0) {
+            throw new TIFFFormatException("Bad RowsPerStrip " + stripHeight);
+        }
+        rowsPerStrip = (int) Math.min(stripHeight, height);
+        stripOffsets = directory.values(TIFFDirectory.STRIP_OFFSETS);
+        stripByteCounts = directory.values(TIFFDirectory.STRIP_BYTE_COUNTS);
+        int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+        if (stripOffsets == null || stripByteCounts == null
+                || stripOffsets.length < strips || stripByteCounts.length < strips) {
+            throw new TIFFFormatException("Missing or short strip tables");
+        }
+        for (int s = 0; s < strips; s++) {
+            if (stripOffsets[s] + stripByteCounts[s] > size) {
+                throw new TIFFFormatException("Strip " + s + " runs past the end of the file");
+            }
+            if (compression == TIFFDirectory.NO_COMPRESSION
+                    && stripByteCounts[s] < 3L * width * stripRows(s)) {
+                throw new TIFFFormatException("Strip " + s + " is too short");
+            }
+        }
+    }
+
+    /**
+     * open() maps a TIFF file and reads its first image file directory.
+     *
+     * @param file the file to read.
+     * @return a reader for the image.
+     * @throws TIFFFormatException if the file is not a TIFF we can decode.
+     * @throws IOException         if the file cannot be read.
+     */
+    public static TIFFReader open(Path file) throws IOException {
+        return open(file, true);
+    }
+
+    /**
+     * open() opens a TIFF file and reads its first image file directory,
+     * mapping the file if mapped is true and reading it into the heap
+     * otherwise.
+     *
+     * @param file   the file to read.
+     * @param mapped whether to map the file.
+     * @return a reader for the image.
+     * @throws TIFFFormatException if the file is not a TIFF we can decode.
+     * @throws IOException         if the file cannot be read.
+     */
+    public static TIFFReader open(Path file, boolean mapped) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new TIFFReader(channel, mapped);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * getCompression() returns the TIFF compression code: 1 for none, 32773
+     * for PackBits.
+     */
+    public int getCompression() {
+        return compression;
+    }
+
+    public int getRowsPerStrip() {
+        return rowsPerStrip;
+    }
+
+    public int getStripCount() {
+        return (height + rowsPerStrip - 1) / rowsPerStrip;
+    }
+
+    /**
+     * readRow() decodes row y into packed colours.
+     */
+    @Override
+    public void readRow(int y, int[] row) {
+        if (rows == null) {
+            rows = new StripDecoder();
+        }
+        rows.readRow(y, row);
+    }
+
+    /**
+     * read() decodes the whole image into dst, using the default
+     * TiledExecutor.
+     */
+    public void read(PixelStorage dst) {
+        read(dst, TiledExecutor.getDefault());
+    }
+
+    /**
+     * read() decodes the whole image into dst, which must be the same size.
+     * Bands of strips are decoded in parallel.
+     */
+    public void read(final PixelStorage dst, TiledExecutor executor) {
+        if (dst.getWidth() != width || dst.getHeight() != height) {
+            throw new IllegalArgumentException("Storage is " + dst.getWidth() + "x" + dst.getHeight() +
+                    ", image is " + width + "x" + height);
+        }
+        executor.forEachBand(getStripCount(), new TiledExecutor.BandTask() {
+            @Override
+            public void run(int band, int firstStrip, int lastStrip) {
+                StripDecoder decoder = new StripDecoder();
+                int[] row = new int[width];
+                int y1 = Math.min(lastStrip * rowsPerStrip, height);
+                for (int y = firstStrip * rowsPerStrip; y < y1; y++) {
+                    decoder.readRow(y, row);
+                    dst.setRGB(y * width, row, 0, width);
+                }
+            }
+        });
+    }
+
+    /**
+     * readRuns() decodes the image into runs without building a pixel grid.
+     * PackBits repeat packets become runs directly, so a mostly flat image
+     * decodes in time and memory proportional to its packets and runs;
+     * uncompressed strips are scanned a row at a time.  Runs are merged
+     * across packets, rows and strips.
+     */
+    public RunTable readRuns() throws IOException {
+        RunTable runs = new RunTable(Math.multiplyExact(width, height));
+        if (compression == TIFFDirectory.PACKBITS) {
+            RunBuilder builder = new RunBuilder(runs);
+            for (int s = 0; s < getStripCount(); s++) {
+                builder.strip(map(stripOffsets[s], stripByteCounts[s]), 3 * width * stripRows(s));
+            }
+        } else {
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                readRow(y, row);
+                runs.appendRow(row, width);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * close() closes the file.  Mapped buffers stay valid until they are
+     * garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int stripRows(int strip) {
+        return Math.min(rowsPerStrip, height - strip * rowsPerStrip);
+    }
+
+    /**
+     * map() returns a buffer holding bytes offset...offset + length - 1 of
+     * the file, positioned at zero.
+     */
+    private ByteBuffer map(long offset, long length) throws IOException {
+        if (file != null) {
+            ByteBuffer view = file.duplicate();
+            view.position((int) offset);
+            view.limit((int) (offset + length));
+            return view.slice();
+        }
+        return mapped ? channel.map(FileChannel.MapMode.READ_ONLY, offset, length) : read(offset, length);
+    }
+
+    /**
+     * read() reads bytes offset...offset + length - 1 of the file into a new
+     * heap buffer, positioned at zero.
+     */
+    private ByteBuffer read(long offset, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new TIFFFormatException("File ends at byte " + (offset + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * unpack() turns length bytes of RGB triples, starting at offset in
+     * bytes, into packed colours.
+     */
+    private static void unpack(byte[] bytes, int offset, int[] row, int length) {
+        for (int x = 0, i = offset; x < length; x++, i += 3) {
+            row[x] = Pixel.pack(bytes[i], bytes[i + 1], bytes[i + 2]);
+        }
+    }
+
+    /**
+     * unpackBits() decodes PackBits packets from in until out is full or in
+     * runs out.  Bytes of out that are not reached are left as they were.
+     */
+    static void unpackBits(ByteBuffer in, byte[] out) {
+        int o = 0;
+        while (o < out.length && in.hasRemaining()) {
+            int n = in.get();
+            if (n >= 0) {
+                int count = Math.min(n + 1, Math.min(out.length - o, in.remaining()));
+                in.get(out, o, count);
+                o += count;
+            } else if (n != -128 && in.hasRemaining()) {
+                byte value = in.get();
+                int end = Math.min(o + 1 - n, out.length);
+                while (o < end) {
+                    out[o++] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * A StripDecoder decodes rows, keeping the bytes of the strip it last
+     * touched.  Each thread needs its own.
+     */
+    private class StripDecoder {
+
+        private final byte[] rowBytes = new byte[3 * width];
+        private byte[] stripBytes;
+        private ByteBuffer strip;
+        private int stripIndex = -1;
+
+        void readRow(int y, int[] row) {
+            if (y < 0 || y >= height) {
+                throw new IndexOutOfBoundsException("Row " + y + " of " + height);
+            }
+            int s = y / rowsPerStrip;
+            int rowInStrip = y - s * rowsPerStrip;
+            if (s != stripIndex) {
+                load(s);
+            }
+            if (compression == TIFFDirectory.NO_COMPRESSION) {
+                strip.position(3 * width * rowInStrip);
+                strip.get(rowBytes);
+                unpack(rowBytes, 0, row, width);
+            } else {
+                unpack(stripBytes, 3 * width * rowInStrip, row, width);
+            }
+        }
+
+        private void load(int s) {
+            try {
+                strip = map(stripOffsets[s], stripByteCounts[s]);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot map strip " + s, e);
+            }
+            if (compression == TIFFDirectory.PACKBITS) {
+                int size = 3 * width * stripRows(s);
+                if (stripBytes == null || stripBytes.length != size) {
+                    stripBytes = new byte[size];
+                } else {
+                    Arrays.fill(stripBytes, (byte) 0);
+                }
+                unpackBits(strip, stripBytes);
+            }
+            stripIndex = s;
+        }
+    }
+
+    /**
+     * A RunBuilder turns PackBits packets into runs.  Bytes are gathered into
+     * pixels three at a time; a repeat packet that starts on a pixel boundary
+     * adds all its whole grey pixels as one run.
+     */
+    private static class RunBuilder {
+
+        private final RunTable runs;
+        // The red and green bytes of a pixel that is not yet complete.
+        private final int[] partial = new int[2];
+        private int phase;
+
+        RunBuilder(RunTable runs) {
+            this.runs = runs;
+        }
+
+        /**
+         * strip() decodes one strip of size bytes.  As in unpackBits(), bytes
+         * missing from a short strip are zero.
+         */
+        void strip(ByteBuffer in, int size) {
+            while (size > 0 && in.hasRemaining()) {
+                int n = in.get();
+                if (n >= 0) {
+                    int count = Math.min(n + 1, Math.min(size, in.remaining()));
+                    for (int i = 0; i < count; i++) {
+                        push(in.get() & 0xFF);
+                    }
+                    size -= count;
+                } else if (n != -128 && in.hasRemaining()) {
+                    int value = in.get() & 0xFF;
+                    int count = Math.min(1 - n, size);
+                    size -= count;
+                    repeat(value, count);
+                }
+            }
+            repeat(0, size);
+        }
+
+        private void repeat(int value, int count) {
+            while (phase != 0 && count > 0) {
+                push(value);
+                count--;
+            }
+            int pixels = count / 3;
+            if (pixels > 0) {
+                runs.append(pixels, Pixel.pack(value, value, value));
+                count -= 3 * pixels;
+            }
+            while (count > 0) {
+                push(value);
+                count--;
+            }
+        }
+
+        private void push(int value) {
+            if (phase < 2) {
+                partial[phase++] = value;
+            } else {
+                runs.append(1, Pixel.pack(partial[0], partial[1], value));
+                phase = 0;
+            }
+        }
+    }
+
+    /**
+     * A Directory reads the fields of an image file directory.
+     */
+    private class Directory {
+
+        private final long offset;
+        private final int count;
+        private final ByteBuffer entries;
+
+        Directory(long offset) throws IOException {
+            this.offset = offset;
+            if (offset + 2 > channel.size()) {
+                throw new TIFFFormatException("Directory offset " + offset + " is past the end of the file");
+            }
+            count = map(offset, 2).order(order).getShort(0) & 0xFFFF;
+            if (offset + 2 + 12L * count > channel.size()) {
+                throw new TIFFFormatException("Directory runs past the end of the file");
+            }
+            entries = map(offset + 2, 12L * count).order(order);
+        }
+
+        /**
+         * values() returns the values of an integer field, or null if the
+         * directory does not have it.
+         */
+        long[] values(int tag) throws IOException {
+            for (int i = 0; i < count; i++) {
+                int base = 12 * i;
+                if ((entries.getShort(base) & 0xFFFF) != tag) {
+                    continue;
+                }
+                int type = entries.getShort(base + 2) & 0xFFFF;
+                long n = entries.getInt(base + 4) & 0xFFFFFFFFL;
+                int size;
+                switch (type) {
+                    case 1:
+                        size = 1;
+                        break;
+                    case TIFFDirectory.SHORT:
+                        size = 2;
+                        break;
+                    case TIFFDirectory.LONG:
+                        size = 4;
+                        break;
+                    default:
+                        throw new TIFFFormatException("Tag " + tag + " has non-integer type " + type);
+                }
+                if (n * size > channel.size()) {
+                    throw new TIFFFormatException("Tag " + tag + " has too many values");
+                }
+                ByteBuffer data;
+                if (n * size <= 4) {
+                    data = map(offset + 2 + base + 8, 4).order(order);
+                } else {
+                    long at = entries.getInt(base + 8) & 0xFFFFFFFFL;
+                    if (at + n * size > channel.size()) {
+                        throw new TIFFFormatException("Tag " + tag + " points past the end of the file");
+                    }
+                    data = map(at, n * size).order(order);
+                }
+                long[] values = new long[(int) n];
+                for (int k = 0; k < n; k++) {
+                    if (size == 1) {
+                        values[k] = data.get(k) & 0xFF;
+                    } else if (size == 2) {
+                        values[k] = data.getShort(2 * k) & 0xFFFF;
+                    } else {
+                        values[k] = data.getInt(4 * k) & 0xFFFFFFFFL;
+                    }
+                }
+                return values;
+            }
+            return null;
+        }
+
+        /**
+         * value() returns the first value of a field, or fallback if the
+         * directory does not have it.
+         */
+        long value(int tag, long fallback) throws IOException {
+            long[] values = values(tag);
+            return values == null || values.length == 0 ? fallback : values[0];
+        }
+    }
+}
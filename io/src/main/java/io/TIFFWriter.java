@@ -0,0 +1,334 @@
+package io;
+
+import data.Pixel;
+import data.RowSource;
+import data.RunTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A TIFFWriter writes 8-bit RGB images as baseline TIFF files.
+ * <p/>
+ * The image is split into strips of about getStripSize() bytes.  Each strip
+ * is packed into a direct ByteBuffer and handed to a FileChannel in one
+ * write, so no per-pixel objects or per-byte calls are involved.  The
+ * strips go right after the header and the image file directory goes at
+ * the end, once every strip's offset and byte count is known; the header's
+ * pointer to the directory is then patched in place.
+ * <p/>
+ * writePackBits() writes a run-length encoded image with PackBits
+ * compression, straight from its runs.  The encoded bytes are flushed to
+ * the channel whenever the buffer fills, so the memory needed is one buffer
+ * however large the image is.
+ * <p/>
+ * A TIFFWriter keeps its buffer between calls, so reuse one writer for many
+ * images.  It is not safe to share one between threads.
+ */
+public class TIFFWriter {
+
+    /**
+     * DEFAULT_STRIP_SIZE is the number of bytes we aim to put in each strip.
+     */
+    public static final int DEFAULT_STRIP_SIZE = 64 * 1024;
+
+    static final int HEADER_SIZE = 8;
+
+    // The most bytes one PackBits packet can take: a header and 128 literals.
+    private static final int MAX_PACKET = 129;
+
+    private final int stripSize;
+    private ByteBuffer buffer;
+
+    public TIFFWriter() {
+        this(DEFAULT_STRIP_SIZE);
+    }
+
+    /**
+     * TIFFWriter() constructs a writer that aims for strips of stripSize
+     * bytes.  A strip always holds at least one row.
+     */
+    public TIFFWriter(int stripSize) {
+        if (stripSize < 1) {
+            throw new IllegalArgumentException("Strip size must be positive: " + stripSize);
+        }
+        this.stripSize = stripSize;
+    }
+
+    public int getStripSize() {
+        return stripSize;
+    }
+
+    /**
+     * rowsPerStrip() returns the number of rows in each strip of an image of
+     * the given width.
+     */
+    public int rowsPerStrip(int width) {
+        return Math.max(1, stripSize / (3 * Math.max(width, 1)));
+    }
+
+    /**
+     * write() writes image to file as an uncompressed TIFF, replacing any
+     * file that is already there.  The rows are read once each, in order,
+     * and each strip is written as soon as its rows are read, so image may be
+     * the last stage of a streaming pipeline (see data.RowStage).
+     *
+     * @param image the rows of the image.
+     * @param file  the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(RowSource image, Path file) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowsPerStrip = rowsPerStrip(width);
+        int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+        int[] stripOffsets = new int[strips];
+        int[] stripByteCounts = new int[strips];
+
+        ByteBuffer strip = buffer(3 * width * Math.min(rowsPerStrip, Math.max(height, 1)));
+        int[] row = new int[width];
+        byte[] rowBytes = new byte[3 * width];
+
+        try (FileChannel channel = open(file)) {
+            writeHeader(channel);
+            for (int s = 0; s < strips; s++) {
+                int y0 = s * rowsPerStrip;
+                int y1 = Math.min(y0 + rowsPerStrip, height);
+                strip.clear();
+                for (int y = y0; y < y1; y++) {
+                    image.readRow(y, row);
+                    for (int x = 0, i = 0; x < width; x++) {
+                        int argb = row[x];
+                        rowBytes[i++] = (byte) (argb >> 16);
+                        rowBytes[i++] = (byte) (argb >> 8);
+                        rowBytes[i++] = (byte) argb;
+                    }
+                    strip.put(rowBytes);
+                }
+                strip.flip();
+                stripOffsets[s] = TIFFDirectory.checkedOffset(channel.position());
+                stripByteCounts[s] = strip.remaining();
+                writeFully(channel, strip);
+            }
+
+            TIFFDirectory directory = new TIFFDirectory();
+            directory.addBaselineRGB(width, height, TIFFDirectory.NO_COMPRESSION, rowsPerStrip,
+                    stripOffsets, stripByteCounts);
+            writeDirectory(channel, directory);
+        }
+    }
+
+    /**
+     * writePackBits() writes the image held in runs to file as a PackBits
+     * compressed TIFF, replacing any file that is already there.
+     * <p/>
+     * Each row is packed separately, as TIFF requires.  A grey run (equal
+     * red, green and blue) becomes repeat packets of up to 128 bytes; other
+     * runs are gathered into literal packets.
+     *
+     * @param runs   the pixels of the image, in row-major order.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @param file   the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writePackBits(RunTable runs, int width, int height, Path file) throws IOException {
+        if ((long) width * height != runs.size() || !runs.isFull()) {
+            throw new IllegalArgumentException("Runs do not cover a " + width + "x" + height + " image");
+        }
+        int rowsPerStrip = rowsPerStrip(width);
+        int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+        int[] stripOffsets = new int[strips];
+        int[] stripByteCounts = new int[strips];
+
+        try (FileChannel channel = open(file)) {
+            writeHeader(channel);
+            PackBitsStream out = new PackBitsStream(channel, buffer(Math.max(stripSize, MAX_PACKET)));
+
+            RunTable.Cursor cursor = runs.cursor();
+            cursor.next();
+            // The number of pixels of the cursor's run already written.
+            int used = 0;
+            for (int s = 0; s < strips; s++) {
+                long stripStart = out.position();
+                int y1 = Math.min((s + 1) * rowsPerStrip, height);
+                for (int y = s * rowsPerStrip; y < y1; y++) {
+                    int x = 0;
+                    while (x < width) {
+                        int length = Math.min(cursor.getLength() - used, width - x);
+                        out.pixels(cursor.getRGB(), length);
+                        x += length;
+                        used += length;
+                        if (used == cursor.getLength()) {
+                            cursor.next();
+                            used = 0;
+                        }
+                    }
+                    out.endRow();
+                }
+                stripOffsets[s] = TIFFDirectory.checkedOffset(stripStart);
+                stripByteCounts[s] = (int) (out.position() - stripStart);
+            }
+            out.flush();
+
+            TIFFDirectory directory = new TIFFDirectory();
+            directory.addBaselineRGB(width, height, TIFFDirectory.PACKBITS, rowsPerStrip,
+                    stripOffsets, stripByteCounts);
+            writeDirectory(channel, directory);
+        }
+    }
+
+    /**
+     * A PackBitsStream packs the bytes of one row at a time into PackBits
+     * packets and writes them to a channel through a buffer.
+     */
+    private static class PackBitsStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        // Literal bytes waiting to be written as one packet.
+        private final byte[] literal = new byte[128];
+        private int literals;
+
+        PackBitsStream(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * position() returns the file offset of the next byte to be written,
+         * counting bytes still in the buffer.  Call it only between rows.
+         */
+        long position() throws IOException {
+            return channel.position() + buffer.position();
+        }
+
+        /**
+         * pixels() appends count pixels of one colour to the current row.
+         */
+        void pixels(int argb, int count) throws IOException {
+            int red = Pixel.red(argb);
+            if (red == Pixel.green(argb) && red == Pixel.blue(argb)) {
+                int bytes = 3 * count;
+                while (bytes > 1) {
+                    int repeat = Math.min(bytes, 128);
+                    endLiteral();
+                    room();
+                    buffer.put((byte) (1 - repeat));
+                    buffer.put((byte) red);
+                    bytes -= repeat;
+                }
+                if (bytes == 1) {
+                    literal((byte) red);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    literal((byte) red);
+                    literal((byte) Pixel.green(argb));
+                    literal((byte) Pixel.blue(argb));
+                }
+            }
+        }
+
+        /**
+         * endRow() finishes the current row; packets never span rows.
+         */
+        void endRow() throws IOException {
+            endLiteral();
+        }
+
+        void flush() throws IOException {
+            endLiteral();
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+
+        private void literal(byte value) throws IOException {
+            if (literals == literal.length) {
+                endLiteral();
+            }
+            literal[literals++] = value;
+        }
+
+        private void endLiteral() throws IOException {
+            if (literals > 0) {
+                room();
+                buffer.put((byte) (literals - 1));
+                buffer.put(literal, 0, literals);
+                literals = 0;
+            }
+        }
+
+        /**
+         * room() makes sure the buffer has space for one more packet.
+         */
+        private void room() throws IOException {
+            if (buffer.remaining() < MAX_PACKET) {
+                buffer.flip();
+                writeFully(channel, buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * buffer() returns the writer's direct buffer, grown to at least
+     * capacity bytes.
+     */
+    private ByteBuffer buffer(int capacity) {
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocateDirect(Math.max(capacity, stripSize));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * writeHeader() writes a big-endian TIFF header whose directory offset
+     * is filled in later by writeDirectory().
+     */
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.putShort((short) 0x4d4d);  // "MM": big-endian byte order.
+        header.putShort((short) 42);      // Magic number for TIFF files.
+        header.putInt(0);                 // Offset of the directory, patched later.
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    /**
+     * writeDirectory() writes the directory at the end of the file, on a
+     * word boundary, and points the header at it.
+     */
+    private static void writeDirectory(FileChannel channel, TIFFDirectory directory) throws IOException {
+        if ((channel.position() & 1) != 0) {
+            writeFully(channel, ByteBuffer.allocate(1));
+        }
+        long offset = channel.position();
+        writeFully(channel, directory.toBuffer(offset));
+
+        ByteBuffer pointer = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        pointer.putInt(TIFFDirectory.checkedOffset(offset));
+        pointer.flip();
+        while (pointer.hasRemaining()) {
+            channel.write(pointer, 4 + pointer.position());
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
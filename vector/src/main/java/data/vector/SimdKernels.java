@@ -0,0 +1,147 @@
+package data.vector;
+
+import data.Pixel;
+import data.VectorKernels;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SimdKernels implements VectorKernels with the jdk.incubator.vector API, in
+ * the widest vectors the processor handles well (256 bits with AVX2, 512
+ * with AVX-512).  Each loop runs whole vectors and finishes the last few
+ * pixels of a row one at a time.
+ * <p/>
+ * There is no vector integer division, so average() divides in floats.  For
+ * a sum s of a window of c pixels, s / c rounded toward zero is
+ * (s - (c - 1) / 2) / c rounded to the nearest integer, and that quotient
+ * is at least 0.5 / c away from a tie.  A float quotient below 256 is within
+ * 0.00002 of the true one, so rounding it gives the exact answer while
+ * c <= MAX_FLOAT_COUNT; larger windows are divided one pixel at a time.
+ * The rounding is done by adding ROUNDER, which leaves the integer in the
+ * low bits of the float, because converting floats to ints is slow in the
+ * incubator API.
+ */
+public final class SimdKernels implements VectorKernels {
+
+    static final int MAX_FLOAT_COUNT = 4096;
+
+    // 1.5 * 2^23: adding it to a float of magnitude below 2^22 rounds to an
+    // integer held in the low bits.
+    private static final float ROUNDER = 12582912f;
+    private static final int ROUNDER_BITS = Float.floatToIntBits(ROUNDER);
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * SimdKernels() checks that vectors are worth using on this processor.
+     *
+     * @throws UnsupportedOperationException if its vectors hold fewer than
+     *                                       four ints.
+     */
+    public SimdKernels() {
+        if (INTS.length() < 4) {
+            throw new UnsupportedOperationException("Only " + INTS.length() + " ints fit in a vector");
+        }
+    }
+
+    @Override
+    public void add(int[] total, int[] sums) {
+        int i = 0;
+        for (; i < INTS.loopBound(total.length); i += INTS.length()) {
+            IntVector.fromArray(INTS, total, i).add(IntVector.fromArray(INTS, sums, i)).intoArray(total, i);
+        }
+        for (; i < total.length; i++) {
+            total[i] += sums[i];
+        }
+    }
+
+    @Override
+    public void subtract(int[] total, int[] sums) {
+        int i = 0;
+        for (; i < INTS.loopBound(total.length); i += INTS.length()) {
+            IntVector.fromArray(INTS, total, i).sub(IntVector.fromArray(INTS, sums, i)).intoArray(total, i);
+        }
+        for (; i < total.length; i++) {
+            total[i] -= sums[i];
+        }
+    }
+
+    @Override
+    public void average(int[] sums, int[] columnCounts, int rowCount, int[] out) {
+        int width = out.length;
+        int x = 0;
+        // Column counts are largest in the middle of the row.
+        if (width > 0 && (long) columnCounts[width / 2] * rowCount <= MAX_FLOAT_COUNT) {
+            for (; x < INTS.loopBound(width); x += INTS.length()) {
+                FloatVector count = (FloatVector) IntVector.fromArray(INTS, columnCounts, x).mul(rowCount)
+                        .convert(VectorOperators.I2F, 0);
+                FloatVector bias = count.sub(1).mul(0.5f);
+                IntVector red = quotient(sums, x, count, bias);
+                IntVector green = quotient(sums, width + x, count, bias);
+                IntVector blue = quotient(sums, 2 * width + x, count, bias);
+                red.lanewise(VectorOperators.LSHL, 16)
+                        .or(green.lanewise(VectorOperators.LSHL, 8))
+                        .or(blue)
+                        .or(Pixel.OPAQUE)
+                        .intoArray(out, x);
+            }
+        }
+        for (; x < width; x++) {
+            int count = columnCounts[x] * rowCount;
+            out[x] = Pixel.pack(sums[x] / count, sums[width + x] / count, sums[2 * width + x] / count);
+        }
+    }
+
+    private static IntVector quotient(int[] sums, int offset, FloatVector count, FloatVector bias) {
+        FloatVector sum = (FloatVector) IntVector.fromArray(INTS, sums, offset).convert(VectorOperators.I2F, 0);
+        return sum.sub(bias).div(count).add(ROUNDER).reinterpretAsInts().sub(ROUNDER_BITS);
+    }
+
+    @Override
+    public void sobelEnergies(int[] above, int[] middle, int[] below, int[] energies) {
+        int width = energies.length;
+        int stride = width + 2;
+        int x = 0;
+        for (; x < INTS.loopBound(width); x += INTS.length()) {
+            IntVector energy = IntVector.zero(INTS);
+            for (int plane = 0; plane < 3 * stride; plane += stride) {
+                int left = plane + x;
+                IntVector a0 = IntVector.fromArray(INTS, above, left);
+                IntVector a1 = IntVector.fromArray(INTS, above, left + 1);
+                IntVector a2 = IntVector.fromArray(INTS, above, left + 2);
+                IntVector b0 = IntVector.fromArray(INTS, middle, left);
+                IntVector b2 = IntVector.fromArray(INTS, middle, left + 2);
+                IntVector c0 = IntVector.fromArray(INTS, below, left);
+                IntVector c1 = IntVector.fromArray(INTS, below, left + 1);
+                IntVector c2 = IntVector.fromArray(INTS, below, left + 2);
+
+                // Smoothed (1 2 1) down the right column less the left one,
+                // and differenced down the columns, smoothed across.
+                IntVector gx = a2.add(b2).add(b2).add(c2).sub(a0).sub(b0).sub(b0).sub(c0);
+                IntVector d1 = c1.sub(a1);
+                IntVector gy = c0.sub(a0).add(d1).add(d1).add(c2).sub(a2);
+                energy = energy.add(gx.mul(gx)).add(gy.mul(gy));
+            }
+            energy.intoArray(energies, x);
+        }
+        for (; x < width; x++) {
+            int energy = 0;
+            for (int plane = 0; plane < 3 * stride; plane += stride) {
+                int left = plane + x;
+                int gx = above[left + 2] + 2 * middle[left + 2] + below[left + 2]
+                        - above[left] - 2 * middle[left] - below[left];
+                int gy = below[left] - above[left] + 2 * (below[left + 1] - above[left + 1])
+                        + below[left + 2] - above[left + 2];
+                energy += gx * gx + gy * gy;
+            }
+            energies[x] = energy;
+        }
+    }
+
+    @Override
+    public String describe() {
+        return INTS.vectorBitSize() + "-bit vectors, " + INTS.length() + " ints";
+    }
+}